@@ -0,0 +1,32 @@
+#!/bin/sh
+# Builds the benchmarks and runs them, arguments go to JMH, e.g.
+#
+#   LIBS=~/jars jmh/run.sh LoadBenchmark -prof gc
+#   LIBS=~/jars jmh/run.sh -l
+#
+# LIBS is a directory holding the jars of the project (protobuf-java 2.6.1,
+# lz4-java, snappy-java, RoaringBitmap, asynchbase and its dependencies) and
+# of JMH 1.37: jmh-core, jmh-generator-annprocess, jopt-simple and
+# commons-math3. The annotation processor generates the benchmark harness
+# while the sources under jmh/src are compiled, against the classes of src.
+# Needs a JDK 17 or later for the Vector API kernels.
+set -e
+
+if [ -z "$LIBS" ]; then
+	echo "LIBS must be set to the directory holding the jars" >&2
+	exit 1
+fi
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+OUT="$ROOT/jmh/target"
+CP="$LIBS/*"
+JAVA_OPTS="--add-modules jdk.incubator.vector"
+
+rm -rf "$OUT"
+mkdir -p "$OUT/classes" "$OUT/benchmarks"
+javac $JAVA_OPTS -nowarn -d "$OUT/classes" -cp "$CP" $(find "$ROOT/src" -name '*.java')
+javac $JAVA_OPTS -nowarn -d "$OUT/benchmarks" -cp "$OUT/classes:$CP" \
+	-processor org.openjdk.jmh.generators.BenchmarkProcessor \
+	$(find "$ROOT/jmh/src" -name '*.java')
+
+exec java $JAVA_OPTS -cp "$OUT/benchmarks:$OUT/classes:$CP" org.openjdk.jmh.Main "$@"
@@ -0,0 +1,138 @@
+package pbtest.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import pbtest.DataPointProtos.Header;
+import pbtest.io.ColumnarWriter;
+import pbtest.io.DataPointWriter;
+import pbtest.io.Framing;
+import pbtest.utils.Dictionary;
+
+/**
+ * Data points generated in memory with the same settings and random walk as
+ * {@code GenerateData}, and serialized in the formats the benchmarks read.
+ */
+public final class BenchData {
+
+	private static final int RANGE = 101;
+	private static final int GAP = 50;
+	/** 2010-01-01 00:00:00 UTC */
+	private static final long START_TIME = 1262304000L;
+
+	private final int size;
+	private final int numTagK;
+	private final Header header;
+	private final int metricId;
+	private final int[] tagKeyIds;
+	private final long[] timestamps;
+	private final int[] values;
+	/** tag value ids of point i at [i * numTagK, (i + 1) * numTagK) */
+	private final int[] tagValueIds;
+
+	private BenchData(final int size, final int numTagK, final Header header, final int metricId, final int[] tagKeyIds,
+			final long[] timestamps, final int[] values, final int[] tagValueIds) {
+		this.size = size;
+		this.numTagK = numTagK;
+		this.header = header;
+		this.metricId = metricId;
+		this.tagKeyIds = tagKeyIds;
+		this.timestamps = timestamps;
+		this.values = values;
+		this.tagValueIds = tagValueIds;
+	}
+
+	/**
+	 * @param points number of points to generate
+	 * @param pph points per hour, above 3600 timestamps are in milliseconds
+	 */
+	public static BenchData generate(final int points, final int pph, final int numTagK, final int numTagV, final long seed) {
+		final Dictionary dictionary = new Dictionary();
+		final int metricId = dictionary.add("bench");
+		final int[] tagKeyIds = new int[numTagK];
+		for (int k = 0; k < numTagK; k++) {
+			tagKeyIds[k] = dictionary.add("tag" + k);
+		}
+		final int[] valueIds = new int[numTagV];
+		for (int v = 0; v < numTagV; v++) {
+			valueIds[v] = dictionary.add("value" + v);
+		}
+
+		final Random rand = new Random(seed);
+		final long[] timestamps = new long[points];
+		final int[] values = new int[points];
+		final int[] tagValueIds = new int[points * numTagK];
+
+		long time = (pph > 3600) ? START_TIME * 1000 : START_TIME;
+		final int timeInc = (pph > 3600) ? 3600000 / pph : 3600 / pph;
+		int value = rand.nextInt(RANGE) - GAP;
+		for (int i = 0; i < points; i++) {
+			for (int k = 0; k < numTagK; k++) {
+				tagValueIds[i * numTagK + k] = valueIds[rand.nextInt(numTagV)];
+			}
+			timestamps[i] = time;
+			values[i] = value;
+			value += rand.nextInt(RANGE) - GAP;
+			time += timeInc;
+		}
+
+		return new BenchData(points, numTagK, dictionary.toHeader(), metricId, tagKeyIds, timestamps, values, tagValueIds);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public Header header() {
+		return header;
+	}
+
+	public int metricId() {
+		return metricId;
+	}
+
+	public int[] tagKeyIds() {
+		return tagKeyIds;
+	}
+
+	public long timestamp(final int i) {
+		return timestamps[i];
+	}
+
+	public int value(final int i) {
+		return values[i];
+	}
+
+	/** Copies the tag value ids of point i to tags[0, numTagK) */
+	public void tagValueIds(final int i, final int[] tags) {
+		System.arraycopy(tagValueIds, i * numTagK, tags, 0, numTagK);
+	}
+
+	/** @return the points as a .pb file */
+	public byte[] toPb(final Framing framing) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(size * 16);
+		framing.writeHeader(out, header);
+		final DataPointWriter writer = new DataPointWriter(out, framing);
+		final int[] tags = new int[numTagK];
+		for (int i = 0; i < size; i++) {
+			tagValueIds(i, tags);
+			writer.write(metricId, timestamps[i], values[i], tagKeyIds, tags, numTagK);
+		}
+		writer.flush();
+		return out.toByteArray();
+	}
+
+	/** @return the points as a columnar file with the given block encoding */
+	public byte[] toColumnar(final byte encoding) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream(size * 16);
+		final int[] tags = new int[numTagK];
+		try (ColumnarWriter writer = new ColumnarWriter(out, header, 4096, encoding)) {
+			for (int i = 0; i < size; i++) {
+				tagValueIds(i, tags);
+				writer.add(metricId, timestamps[i], true, values[i], false, 0, tagKeyIds, tags, numTagK);
+			}
+		}
+		return out.toByteArray();
+	}
+}
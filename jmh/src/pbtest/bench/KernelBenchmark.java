@@ -0,0 +1,148 @@
+package pbtest.bench;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pbtest.simd.Kernels;
+
+/**
+ * Aggregation kernels over columns of {@link #POINTS} values, with the scalar
+ * kernels and the ones picked by {@link Kernels#get()}. The name of the
+ * kernels actually used is printed during setup: they are only vectorized when
+ * the {@code jdk.incubator.vector} module is added to the forked JVM, as done
+ * here. Scores are per value.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+public class KernelBenchmark {
+
+	static final int POINTS = 100000;
+
+	@Param({ "scalar", "best" })
+	public String kernels;
+
+	/** seconds between points, bucketSums uses hourly buckets */
+	@Param({ "1", "60" })
+	public int interval;
+
+	private Kernels k;
+
+	private long[] timestamps;
+	private int[] ints;
+	private long[] longs;
+	private float[] floats;
+	private double[] doubles;
+
+	private long[] longSums;
+	private double[] doubleSums;
+
+	@Setup
+	public void setup() {
+		k = "scalar".equals(kernels) ? Kernels.scalar() : Kernels.get();
+		System.out.println();
+		System.out.println("kernels: " + k.getName());
+
+		final SplittableRandom random = new SplittableRandom(42);
+		timestamps = new long[POINTS];
+		ints = new int[POINTS];
+		longs = new long[POINTS];
+		floats = new float[POINTS];
+		doubles = new double[POINTS];
+		for (int i = 0; i < POINTS; i++) {
+			timestamps[i] = 1400000000L + (long) i * interval;
+			ints[i] = random.nextInt(1000000);
+			longs[i] = random.nextLong();
+			floats[i] = (float) random.nextDouble();
+			doubles[i] = random.nextDouble();
+		}
+
+		final int buckets = (int) ((long) POINTS * interval / 3600) + 1;
+		longSums = new long[buckets];
+		doubleSums = new double[buckets];
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public long sumInt() {
+		return k.sum(ints, 0, POINTS);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public long sumLong() {
+		return k.sum(longs, 0, POINTS);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public double sumFloat() {
+		return k.sum(floats, 0, POINTS);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public double sumDouble() {
+		return k.sum(doubles, 0, POINTS);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public double mean() {
+		return k.mean(doubles, 0, POINTS);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public int minInt() {
+		return k.min(ints, 0, POINTS);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public double maxDouble() {
+		return k.max(doubles, 0, POINTS);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public int countAboveFloat() {
+		return k.countAbove(floats, 0, POINTS, 0.5f);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public int countAboveLong() {
+		return k.countAbove(longs, 0, POINTS, 0L);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public double[] bucketSumsDouble() {
+		k.sumBuckets(timestamps, doubles, 0, POINTS, timestamps[0], 3600, doubleSums);
+		return doubleSums;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public long[] bucketSumsInt() {
+		k.sumBuckets(timestamps, ints, 0, POINTS, timestamps[0], 3600, longSums);
+		return longSums;
+	}
+}
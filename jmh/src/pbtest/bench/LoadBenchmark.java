@@ -0,0 +1,168 @@
+package pbtest.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import pbtest.DataPointProtos.DataPoint;
+import pbtest.DataPointProtos.Header;
+import pbtest.io.ColumnBlock;
+import pbtest.io.ColumnarFormat;
+import pbtest.io.ColumnarReader;
+import pbtest.io.DataPointCursor;
+import pbtest.io.Framing;
+import pbtest.io.StreamingRecordReader;
+
+/**
+ * Decode strategies of the load path, over data held in memory so that file
+ * I/O is left out. Every operation is one data point, run with the GC profiler
+ * to get the allocation per point:
+ * <pre>
+ * LIBS=... jmh/run.sh LoadBenchmark -prof gc
+ * </pre>
+ * gc.alloc.rate.norm is then in bytes per point, and the score in ns per point.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(LoadBenchmark.POINTS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LoadBenchmark {
+
+	static final int POINTS = 100000;
+
+	@Param({ "1", "4" })
+	public int numTagK;
+
+	@Param({ "1", "1000" })
+	public int numTagV;
+
+	/** above 3600 timestamps are in milliseconds */
+	@Param({ "3600", "36000" })
+	public int pph;
+
+	private byte[] shortFramed;
+	private byte[] varintFramed;
+	private byte[] columnarPlain;
+	private byte[] columnarGorilla;
+
+	private final DataPointCursor cursor = new DataPointCursor();
+	private final ColumnBlock block = new ColumnBlock();
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		final BenchData data = BenchData.generate(POINTS, pph, numTagK, numTagV, 42);
+		shortFramed = data.toPb(Framing.SHORT);
+		varintFramed = data.toPb(Framing.VARINT);
+		columnarPlain = data.toColumnar(ColumnarFormat.ENCODING_PLAIN);
+		columnarGorilla = data.toColumnar(ColumnarFormat.ENCODING_GORILLA);
+	}
+
+	/** The loop of {@code LoadData.loadData}: PARSER.parseFrom over a byte[] */
+	@Benchmark
+	public void parseFrom(final Blackhole bh) throws IOException {
+		final byte[] data = shortFramed;
+		final ByteBuffer buf = ByteBuffer.wrap(data);
+		int idx = 2 + buf.getShort(0);
+		while (idx < data.length) {
+			final short dpSize = buf.getShort(idx);
+			idx += 2;
+			bh.consume(DataPoint.PARSER.parseFrom(data, idx, dpSize));
+			idx += dpSize;
+		}
+	}
+
+	@Benchmark
+	public void parseDelimitedFrom(final Blackhole bh) throws IOException {
+		final ByteArrayInputStream in = new ByteArrayInputStream(varintFramed);
+		in.skip(Framing.VARINT_MAGIC.length);
+		bh.consume(Header.parseDelimitedFrom(in));
+		DataPoint dataPoint;
+		while ((dataPoint = DataPoint.parseDelimitedFrom(in)) != null) {
+			bh.consume(dataPoint);
+		}
+	}
+
+	@Benchmark
+	public long flyweightShort() throws IOException {
+		return scan(shortFramed, Framing.SHORT);
+	}
+
+	@Benchmark
+	public long flyweightVarint() throws IOException {
+		return scan(varintFramed, Framing.VARINT);
+	}
+
+	/** StreamingRecordReader with its default buffer, over the short framed bytes */
+	@Benchmark
+	public long streaming() throws IOException {
+		long sum = 0;
+		try (StreamingRecordReader reader = new StreamingRecordReader(new ByteArrayInputStream(shortFramed))) {
+			while (reader.next(cursor)) {
+				sum += cursor.getTimestamp() + cursor.getIvalue() + cursor.getTagValueId(cursor.getTagCount() - 1);
+			}
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public long columnarPlain() throws IOException {
+		return scanColumnar(columnarPlain);
+	}
+
+	@Benchmark
+	public long columnarGorilla() throws IOException {
+		return scanColumnar(columnarGorilla);
+	}
+
+	private long scan(final byte[] data, final Framing framing) throws IOException {
+		final ByteBuffer buf = ByteBuffer.wrap(data);
+		int idx = framing.headerOffset();
+		final int headerSize = framing.readSize(buf, idx, data.length);
+		idx += framing.prefixSize(headerSize) + headerSize;
+
+		long sum = 0;
+		while (idx < data.length) {
+			final int dpSize = framing.readSize(buf, idx, data.length);
+			idx += framing.prefixSize(dpSize);
+			cursor.wrap(buf, idx, dpSize);
+			sum += cursor.getTimestamp() + cursor.getIvalue() + cursor.getTagValueId(cursor.getTagCount() - 1);
+			idx += dpSize;
+		}
+		return sum;
+	}
+
+	private long scanColumnar(final byte[] data) throws IOException {
+		long sum = 0;
+		try (ColumnarReader reader = new ColumnarReader(new ByteArrayInputStream(data))) {
+			while (reader.next(block)) {
+				final int rows = block.size();
+				final long[] timestamps = block.timestamps();
+				final int[] ivalues = block.ivalues();
+				final int[] tagValues = block.tagValues();
+				for (int i = 0; i < rows; i++) {
+					sum += timestamps[i] + ivalues[i] + tagValues[block.tagOffset(i) + block.tagCounts()[i] - 1];
+				}
+			}
+		}
+		return sum;
+	}
+}
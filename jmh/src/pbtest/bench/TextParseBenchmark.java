@@ -0,0 +1,134 @@
+package pbtest.bench;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pbtest.io.TextLineParser;
+import pbtest.utils.ByteDictionary;
+import pbtest.utils.Utils;
+
+/**
+ * Parsing of OpenTSDB text lines into ids and values, with the String helpers
+ * of {@link Utils} and with {@link TextLineParser} and a
+ * {@link ByteDictionary}. The names all resolve to known ids, as they do once
+ * an import has warmed up. Scores are per line, run with {@code -prof gc} for
+ * the allocation per line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TextParseBenchmark {
+
+	static final int LINES = 10000;
+
+	@Param({ "1", "4" })
+	public int numTags;
+
+	private byte[] data;
+	private int[] lineStarts;
+	private int[] lineEnds;
+	private String[] lines;
+
+	private final Map<String, Integer> stringIds = new HashMap<>();
+	private final ByteDictionary byteIds = new ByteDictionary();
+	private final TextLineParser parser = new TextLineParser();
+
+	@Setup
+	public void setup() {
+		final SplittableRandom random = new SplittableRandom(42);
+		final StringBuilder sb = new StringBuilder();
+		lines = new String[LINES];
+		lineStarts = new int[LINES];
+		lineEnds = new int[LINES];
+		for (int i = 0; i < LINES; i++) {
+			final StringBuilder line = new StringBuilder("put sys.cpu.user ").append(1400000000 + i).append(' ');
+			if (i % 2 == 0) {
+				line.append(random.nextInt(100000));
+			} else {
+				line.append(String.format(Locale.ROOT, "%.3f", random.nextDouble(1000)));
+			}
+			for (int t = 0; t < numTags; t++) {
+				line.append(" tag").append(t).append("=value").append(random.nextInt(100));
+			}
+			lines[i] = line.toString();
+			lineStarts[i] = sb.length();
+			sb.append(line);
+			lineEnds[i] = sb.length();
+			sb.append('\n');
+		}
+		data = sb.toString().getBytes(StandardCharsets.US_ASCII);
+
+		// every name gets an id upfront
+		for (String line : lines) {
+			for (String word : Utils.splitString(line, ' ')) {
+				for (String name : Utils.splitString(word, '=')) {
+					if (!stringIds.containsKey(name)) {
+						final byte[] bytes = name.getBytes(StandardCharsets.US_ASCII);
+						byteIds.put(bytes, 0, bytes.length, stringIds.size());
+						stringIds.put(name, stringIds.size());
+					}
+				}
+			}
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public long strings() {
+		long sum = 0;
+		final HashMap<String, String> tags = new HashMap<>();
+		for (String line : lines) {
+			final String[] words = Utils.splitString(line, ' ');
+			final int w = words[0].equals("put") ? 1 : 0;
+			sum += stringIds.get(words[w]);
+			sum += Utils.parseLong(words[w + 1]);
+			final String value = words[w + 2];
+			sum += Utils.looksLikeInteger(value) ? Utils.parseLong(value) : (long) Float.parseFloat(value);
+			tags.clear();
+			for (int i = w + 3; i < words.length; i++) {
+				Utils.parse(tags, words[i]);
+			}
+			for (Map.Entry<String, String> tag : tags.entrySet()) {
+				sum += stringIds.get(tag.getKey()) + stringIds.get(tag.getValue());
+			}
+		}
+		return sum;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(LINES)
+	public long bytes() {
+		long sum = 0;
+		for (int l = 0; l < LINES; l++) {
+			parser.parse(data, lineStarts[l], lineEnds[l]);
+			sum += byteIds.get(data, parser.getMetricStart(), parser.getMetricEnd());
+			sum += parser.getTimestamp();
+			sum += parser.isInteger() ? parser.getIvalue() : (long) parser.getFvalue();
+			for (int i = 0; i < parser.getTagCount(); i++) {
+				sum += byteIds.get(data, parser.getTagKeyStart(i), parser.getTagKeyEnd(i))
+						+ byteIds.get(data, parser.getTagValueStart(i), parser.getTagValueEnd(i));
+			}
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,181 @@
+package pbtest.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import pbtest.DataPointProtos.DataPoint;
+import pbtest.DataPointProtos.Header;
+import pbtest.io.DataPointWriter;
+import pbtest.io.Framing;
+import pbtest.utils.Dictionary;
+
+/**
+ * Stages of the write path of {@code GenerateData}, measured separately:
+ * record serialization with the protobuf builders (as done before
+ * GenerateData switched to it) or with {@link DataPointWriter}, value id lookups (as
+ * done by {@code GetValueId}), header serialization (as done by
+ * {@link Framing#writeHeader}) and the output sink, in memory or to a file.
+ * <p>
+ * GenerateData lives in the default package and can't be called from here, the
+ * benchmarks run the same code through the classes it delegates to. Scores are
+ * per point, except for {@link #writeHeader()}. The bytes per point of each
+ * setting are printed during setup, run with {@code -prof gc} for the
+ * allocation per point.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WriteBenchmark {
+
+	static final int POINTS = 100000;
+
+	@Param({ "1", "4" })
+	public int numTagK;
+
+	@Param({ "1", "1000" })
+	public int numTagV;
+
+	private BenchData data;
+	private Dictionary dictionary;
+	private Header header;
+	/** value strings of each point's tags, as looked up by GenerateData */
+	private String[] tagValueNames;
+	private String[] tagKeyNames;
+	private String metricName;
+
+	private int[] tags;
+	private ByteArrayOutputStream memory;
+	private DataOutputStream dout;
+	private File file;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException {
+		data = BenchData.generate(POINTS, 3600, numTagK, numTagV, 42);
+		header = data.header();
+		dictionary = Dictionary.fromHeader(header);
+
+		tags = new int[numTagK];
+		metricName = dictionary.getValue(data.metricId());
+		tagKeyNames = new String[numTagK];
+		for (int k = 0; k < numTagK; k++) {
+			tagKeyNames[k] = dictionary.getValue(data.tagKeyIds()[k]);
+		}
+		tagValueNames = new String[POINTS * numTagK];
+		for (int i = 0; i < POINTS; i++) {
+			data.tagValueIds(i, tags);
+			for (int k = 0; k < numTagK; k++) {
+				tagValueNames[i * numTagK + k] = dictionary.getValue(tags[k]);
+			}
+		}
+
+		memory = new ByteArrayOutputStream(POINTS * 32);
+		dout = new DataOutputStream(memory);
+		file = File.createTempFile("pbtest-bench", ".pb");
+
+		final long size = data.toPb(Framing.SHORT).length;
+		System.out.printf("\n%.2f bytes per point, numTagK=%d numTagV=%d\n", (double) size / POINTS, numTagK, numTagV);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		file.delete();
+	}
+
+	/** The former GenerateData.WriteRecord: builds each DataPoint and writes it with writeTo */
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public int builderRecord() throws IOException {
+		memory.reset();
+		final int[] tagKeyIds = data.tagKeyIds();
+		for (int i = 0; i < POINTS; i++) {
+			data.tagValueIds(i, tags);
+			final DataPoint.Builder dataPoint = DataPoint.newBuilder()
+					.setMetricId(data.metricId())
+					.setTimestamp(data.timestamp(i))
+					.setIvalue(data.value(i));
+			for (int k = 0; k < numTagK; k++) {
+				dataPoint.addTag(DataPoint.Tag.newBuilder().setKeyId(tagKeyIds[k]).setValueId(tags[k]));
+			}
+			final DataPoint dp = dataPoint.build();
+			dout.writeShort(dp.getSerializedSize());
+			dp.writeTo(dout);
+		}
+		dout.flush();
+		return memory.size();
+	}
+
+	/** The allocation free writer used by the generate loop */
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public int writerRecord() throws IOException {
+		memory.reset();
+		final DataPointWriter writer = new DataPointWriter(memory);
+		writeAll(writer);
+		return memory.size();
+	}
+
+	/** GenerateData.GetValueId: resolves the metric and tags of every point */
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public long valueIds() {
+		long sum = 0;
+		for (int i = 0; i < POINTS; i++) {
+			sum += dictionary.getId(metricName);
+			for (int k = 0; k < numTagK; k++) {
+				sum += dictionary.getId(tagKeyNames[k]);
+				sum += dictionary.getId(tagValueNames[i * numTagK + k]);
+			}
+		}
+		return sum;
+	}
+
+	/** Header of a GenerateData file, one header per operation */
+	@Benchmark
+	public int writeHeader() throws IOException {
+		memory.reset();
+		return Framing.SHORT.writeHeader(memory, header);
+	}
+
+	/** Same as {@link #writerRecord()} but to a file, the data stays in the page cache */
+	@Benchmark
+	@OperationsPerInvocation(POINTS)
+	public long fileSink() throws IOException {
+		try (FileOutputStream out = new FileOutputStream(file)) {
+			final DataPointWriter writer = new DataPointWriter(out);
+			writeAll(writer);
+			return out.getChannel().position();
+		}
+	}
+
+	private void writeAll(final DataPointWriter writer) throws IOException {
+		final int metricId = data.metricId();
+		final int[] tagKeyIds = data.tagKeyIds();
+		for (int i = 0; i < POINTS; i++) {
+			data.tagValueIds(i, tags);
+			writer.write(metricId, data.timestamp(i), data.value(i), tagKeyIds, tags, numTagK);
+		}
+		writer.flush();
+	}
+}
@@ -0,0 +1,45 @@
+import java.io.IOException;
+
+import pbtest.io.MappedRecordReader;
+import pbtest.io.TimestampIndex;
+
+public class BuildIndex {
+
+	/** Prints usage and exits.  */
+	static void usage() {
+		System.err.println("Usage: index path [interval]");
+		System.exit(-1);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1) {
+			usage();
+		}
+
+		String path = args[0];
+		int interval = TimestampIndex.DEFAULT_INTERVAL;
+
+		if (args.length > 1) {
+			try {
+				interval = Integer.parseInt(args[1]);
+			} catch (NumberFormatException e) {
+				interval = 0;
+			}
+
+			if (interval <= 0) {
+				System.err.println("interval must be a positive integer\n");
+				usage();
+			}
+		}
+
+		long startTime = System.currentTimeMillis();
+
+		final String indexPath = TimestampIndex.sidecarPath(path);
+		try (MappedRecordReader reader = new MappedRecordReader(path)) {
+			TimestampIndex.build(reader, indexPath, interval);
+		}
+
+		long totalTime = System.currentTimeMillis() - startTime;
+		System.out.printf("Index %s built in %dms\n", indexPath, totalTime);
+	}
+}
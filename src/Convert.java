@@ -0,0 +1,67 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+import pbtest.io.ColumnarFormat;
+import pbtest.io.FormatConverter;
+import pbtest.io.Framing;
+
+public class Convert {
+
+	/** Prints usage and exits.  */
+	static void usage() {
+		System.err.println("Usage: convert --to-columnar [--gorilla] in.pb out.pbc [block-size]\n"
+				+ "       convert --to-pb [--varint] in.pbc out.pb");
+		System.exit(-1);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length < 3) {
+			usage();
+		}
+
+		final long startTime = System.currentTimeMillis();
+		final long count;
+
+		if (args[0].equals("--to-columnar")) {
+			byte encoding = ColumnarFormat.ENCODING_PLAIN;
+			if (args[1].equals("--gorilla")) {
+				encoding = ColumnarFormat.ENCODING_GORILLA;
+				args = Arrays.copyOfRange(args, 1, args.length);
+				if (args.length < 3) {
+					usage();
+				}
+			}
+
+			int blockSize = ColumnarFormat.DEFAULT_BLOCK_SIZE;
+			if (args.length > 3) {
+				try {
+					blockSize = Integer.parseInt(args[3]);
+				} catch (NumberFormatException e) {
+					blockSize = 0;
+				}
+
+				if (blockSize <= 0) {
+					System.err.println("block-size must be a positive integer\n");
+					usage();
+				}
+			}
+			count = FormatConverter.toColumnar(args[1], args[2], blockSize, encoding);
+		} else if (args[0].equals("--to-pb")) {
+			Framing framing = Framing.SHORT;
+			if (args[1].equals("--varint")) {
+				framing = Framing.VARINT;
+				args = Arrays.copyOfRange(args, 1, args.length);
+				if (args.length < 3) {
+					usage();
+				}
+			}
+			count = FormatConverter.toRows(args[1], args[2], framing);
+		} else {
+			usage();
+			return;
+		}
+
+		long totalTime = System.currentTimeMillis() - startTime;
+		System.out.printf("Converted %d data points in %dms\n", count, totalTime);
+	}
+}
@@ -5,25 +5,199 @@ import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.util.List;
 import java.util.Random;
 
-import pbtest.DataPointProtos.DataPoint;
 import pbtest.DataPointProtos.Header;
+import pbtest.codec.Compression;
+import pbtest.gen.ParallelGenerator;
+import pbtest.gen.TagDistribution;
+import pbtest.gen.Workload;
+import pbtest.io.ColumnarFormat;
+import pbtest.io.ColumnarWriter;
+import pbtest.io.CompressedBlockWriter;
+import pbtest.io.DataPointWriter;
+import pbtest.io.Framing;
+import pbtest.io.TimestampIndex;
+import pbtest.utils.Dictionary;
 
 public class GenerateData {
 
-	private static List<String> values = new ArrayList<>();
+	private static final Dictionary values = new Dictionary();
 	
+	/** Output settings of the generator */
+	static final class Options {
+		/** if &gt; 0 a {@link TimestampIndex} with an entry every indexInterval records is written next to the data file */
+		int indexInterval = 0;
+		/** if true the points are written to a columnar .pbc file with Gorilla encoded blocks instead of a .pb file */
+		boolean gorilla = false;
+		/** framing of the .pb file */
+		Framing framing = Framing.SHORT;
+		/** if not null the points are written to a block compressed .pbz container */
+		Compression compression = null;
+		/** if &gt; 0 that many metrics are generated in parallel, see {@link ParallelGenerator} */
+		int metrics = 0;
+		/** number of generator threads when metrics &gt; 0 */
+		int threads = Runtime.getRuntime().availableProcessors();
+		/** seed of the parallel generator, the output only depends on it */
+		long seed = new Random().nextLong();
+		/** number of tags of every point */
+		int numTagK = 1;
+		/** number of distinct values of every tag */
+		int numTagV = 1;
+		/** distribution of the tag values when metrics &gt; 0, see {@link TagDistribution#parse(String, int)} */
+		String distribution = "uniform";
+		/** points per hour of each metric when metrics &gt; 0, defaults to pph for all */
+		int[] rates = null;
+		/** kind of values when metrics &gt; 0 */
+		Workload.ValueKind valueKind = Workload.ValueKind.INT;
+	}
+
 	/** Prints usage and exits.  */
 	static void usage() {
-		System.err.println("Usage: generate metric [num-days] [pph]");
+		System.err.println("Usage: generate [--index interval] [--varint] [--gorilla] [--compress none|deflate|snappy|lz4]"
+				+ " [--tags keys:values] [--metrics n [--threads n] [--seed n] [--dist uniform|zipf:s|hot:fraction:probability]"
+				+ " [--rates pph,...] [--values int|float|mixed]] metric [num-days] [pph]");
 		System.exit(-1);
 	}
 
 	public static void main(String[] args) throws IOException {
+		final Options options = new Options();
+		int argIdx = 0;
+		for (; argIdx < args.length && args[argIdx].startsWith("--"); argIdx++) {
+			if (args[argIdx].equals("--index")) {
+				if (argIdx + 1 >= args.length) {
+					usage();
+				}
+				try {
+					options.indexInterval = Integer.parseInt(args[++argIdx]);
+				} catch (NumberFormatException e) {
+					options.indexInterval = 0;
+				}
+
+				if (options.indexInterval <= 0) {
+					System.err.println("interval must be a positive integer\n");
+					usage();
+				}
+			} else if (args[argIdx].equals("--varint")) {
+				options.framing = Framing.VARINT;
+			} else if (args[argIdx].equals("--gorilla")) {
+				options.gorilla = true;
+			} else if (args[argIdx].equals("--compress")) {
+				if (argIdx + 1 >= args.length) {
+					usage();
+				}
+				try {
+					options.compression = Compression.valueOf(args[++argIdx].toUpperCase());
+				} catch (IllegalArgumentException e) {
+					System.err.println("unknown compression codec: " + args[argIdx] + "\n");
+					usage();
+				}
+			} else if (args[argIdx].equals("--metrics") || args[argIdx].equals("--threads")) {
+				if (argIdx + 1 >= args.length) {
+					usage();
+				}
+				final String option = args[argIdx].substring(2);
+				int n;
+				try {
+					n = Integer.parseInt(args[++argIdx]);
+				} catch (NumberFormatException e) {
+					n = 0;
+				}
+
+				if (n <= 0) {
+					System.err.println(option + " must be a positive integer\n");
+					usage();
+				}
+				if (option.equals("metrics")) {
+					options.metrics = n;
+				} else {
+					options.threads = n;
+				}
+			} else if (args[argIdx].equals("--tags")) {
+				if (argIdx + 1 >= args.length) {
+					usage();
+				}
+				final String[] tags = args[++argIdx].split(":");
+				try {
+					options.numTagK = Integer.parseInt(tags[0]);
+					options.numTagV = (tags.length == 2) ? Integer.parseInt(tags[1]) : 0;
+				} catch (NumberFormatException e) {
+					options.numTagV = 0;
+				}
+
+				if (options.numTagK < 0 || options.numTagV <= 0) {
+					System.err.println("tags must be a number of keys and a positive number of values\n");
+					usage();
+				}
+			} else if (args[argIdx].equals("--dist")) {
+				if (argIdx + 1 >= args.length) {
+					usage();
+				}
+				options.distribution = args[++argIdx];
+			} else if (args[argIdx].equals("--rates")) {
+				if (argIdx + 1 >= args.length) {
+					usage();
+				}
+				final String[] rates = args[++argIdx].split(",");
+				options.rates = new int[rates.length];
+				for (int r = 0; r < rates.length; r++) {
+					try {
+						options.rates[r] = Integer.parseInt(rates[r]);
+					} catch (NumberFormatException e) {
+						options.rates[r] = 0;
+					}
+
+					if (options.rates[r] <= 0) {
+						System.err.println("rates must be positive integers\n");
+						usage();
+					}
+				}
+			} else if (args[argIdx].equals("--values")) {
+				if (argIdx + 1 >= args.length) {
+					usage();
+				}
+				try {
+					options.valueKind = Workload.ValueKind.valueOf(args[++argIdx].toUpperCase());
+				} catch (IllegalArgumentException e) {
+					System.err.println("unknown value kind: " + args[argIdx] + "\n");
+					usage();
+				}
+			} else if (args[argIdx].equals("--seed")) {
+				if (argIdx + 1 >= args.length) {
+					usage();
+				}
+				try {
+					options.seed = Long.parseLong(args[++argIdx]);
+				} catch (NumberFormatException e) {
+					System.err.println("seed must be an integer\n");
+					usage();
+				}
+			} else {
+				System.err.println("unknown option: " + args[argIdx] + "\n");
+				usage();
+			}
+		}
+		if ((options.gorilla || options.compression != null) && options.indexInterval > 0) {
+			System.err.println("--index is only supported for .pb files\n");
+			usage();
+		}
+		if (options.gorilla && options.compression != null) {
+			System.err.println("--gorilla and --compress can't be combined\n");
+			usage();
+		}
+		if (options.metrics > 0 && (options.gorilla || options.compression != null || options.indexInterval > 0)) {
+			System.err.println("--metrics only supports .pb files without index\n");
+			usage();
+		}
+		if (options.metrics == 0 && (!options.distribution.equals("uniform") || options.rates != null
+				|| options.valueKind != Workload.ValueKind.INT)) {
+			System.err.println("--dist, --rates and --values require --metrics\n");
+			usage();
+		}
+		args = Arrays.copyOfRange(args, argIdx, args.length);
+
 		if (args.length < 1) {
 			usage();
 		}
@@ -57,14 +231,56 @@ public class GenerateData {
 			}
 		}
 
-		generateYearlyFiles(metricName, days, pph);
+		if (options.metrics > 0) {
+			generateParallel(metricName, days, pph, options);
+		} else {
+			generateYearlyFiles(metricName, days, pph, options);
+		}
+	}
+
+	/**
+	 * Generates options.metrics metrics, one file each, on options.threads
+	 * threads. The files are the same for a given seed whatever the number of
+	 * threads.
+	 */
+	static void generateParallel(final String metricName, final int days, final int pph, final Options options) throws IOException {
+		int startYear = 2010;
+
+		Calendar cal = Calendar.getInstance(); // use local timezone
+		cal.set(startYear, 0, 1, 0, 0, 0);
+		cal.set(Calendar.MILLISECOND, 0);
+
+		final Workload workload;
+		try {
+			workload = new Workload(options.numTagK, TagDistribution.parse(options.distribution, options.numTagV),
+					(options.rates != null) ? options.rates : new int[] { pph }, options.valueKind);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage() + "\n");
+			usage();
+			return;
+		}
+		final ParallelGenerator generator = new ParallelGenerator(metricName, options.metrics, workload, options.framing);
+
+		long startTime = System.currentTimeMillis();
+		final long count = generator.generate(cal.getTimeInMillis(), days, options.seed, options.threads);
+		long totalTime = System.currentTimeMillis() - startTime;
+
+		System.out.printf("Total time to create %d data points in %d files with %d threads (seed %d): %dms\n",
+				count, options.metrics, options.threads, options.seed, totalTime);
 	}
 
 	public static void generateYearlyFiles(final String metricName, final int days, final int pph) throws IOException {
+		generateYearlyFiles(metricName, days, pph, new Options());
+	}
+
+	static void generateYearlyFiles(final String metricName, final int days, final int pph, final Options options) throws IOException {
+		if ((options.gorilla || options.compression != null) && options.indexInterval > 0) {
+			throw new IllegalArgumentException("timestamp index is only supported for .pb files");
+		}
 		// consts
 		int numMetrics = 1;
-		int numTagK = 1;
-		int numTagV = 1;
+		int numTagK = options.numTagK;
+		int numTagV = options.numTagV;
 		int startYear = 2010;
 		int range = 101;
 		int gap = 50;
@@ -78,14 +294,43 @@ public class GenerateData {
 		int value = rand.nextInt(range) - gap;
 		long count = 0;
 
-		int[] tagValues = new int[numTagK]; 
+		int[] tagKeyIds = new int[numTagK];
+		int[] tagValueIds = new int[numTagK];
 
 		long startTime = System.currentTimeMillis();
 
-		File metricFile = new File("" + metricName + ".pb");
+		File metricFile = new File("" + metricName + (options.gorilla ? ".pbc" : (options.compression != null) ? ".pbz" : ".pb"));
 		DataOutputStream os = createOutputStream(metricFile);
-		
-		WriteHeader(os, metricName, numTagK, numTagV);
+
+		long offset = 0;
+		DataPointWriter writer = null;
+		ColumnarWriter columnar = null;
+		CompressedBlockWriter compressed = null;
+		if (options.gorilla) {
+			columnar = new ColumnarWriter(os, BuildHeader(metricName, numMetrics, numTagK, numTagV),
+					ColumnarFormat.DEFAULT_BLOCK_SIZE, ColumnarFormat.ENCODING_GORILLA);
+		} else if (options.compression != null) {
+			compressed = new CompressedBlockWriter(os, BuildHeader(metricName, numMetrics, numTagK, numTagV), options.compression);
+		} else {
+			offset = options.framing.writeHeader(os, BuildHeader(metricName, numMetrics, numTagK, numTagV));
+			writer = new DataPointWriter(os, options.framing);
+		}
+
+		// resolve all ids once, the loop below only deals with ids
+		final int[] metricIds = new int[numMetrics];
+		for (int m = 0; m < numMetrics; m++) {
+			metricIds[m] = GetValueId(MetricName(metricName, numMetrics, m));
+		}
+		for (int k = 0; k < numTagK; k++) {
+			tagKeyIds[k] = GetValueId("tag"+k);
+		}
+		final int[] valueIds = new int[numTagV];
+		for (int v = 0; v < numTagV; v++) {
+			valueIds[v] = GetValueId("value"+v);
+		}
+
+		final TimestampIndex.Writer index = (options.indexInterval > 0)
+				? new TimestampIndex.Writer(TimestampIndex.sidecarPath(metricFile.getPath()), options.indexInterval) : null;
 
 		long time = (pph > 3600) ? cal.getTimeInMillis() : cal.getTimeInMillis() / 1000;
 		int time_inc = (pph > 3600) ? 3600000 / pph : 3600 / pph;
@@ -96,12 +341,21 @@ public class GenerateData {
 				for (int i = 0; i < pph; i++) {
 
 					for (int v = 0; v < numTagK; v++) {
-						tagValues[v] = rand.nextInt(numTagV);
+						tagValueIds[v] = valueIds[rand.nextInt(numTagV)];
 					}
 
-					final String mname = metricName + ((numMetrics > 1) ? "." + rand.nextInt(numMetrics) : "");
-
-					WriteRecord(os, mname, time, value, tagValues);
+					final int metricId = metricIds[(numMetrics > 1) ? rand.nextInt(numMetrics) : 0];
+
+					if (columnar != null) {
+						columnar.add(metricId, time, true, value, false, 0, tagKeyIds, tagValueIds, numTagK);
+					} else if (compressed != null) {
+						compressed.write(metricId, time, value, tagKeyIds, tagValueIds, numTagK);
+					} else {
+						if (index != null) {
+							index.add(time, offset);
+						}
+						offset += writer.write(metricId, time, value, tagKeyIds, tagValueIds, numTagK);
+					}
 
 					// Alter the value by a range of +/- RANDOM_GAP
 					value += rand.nextInt(range) - gap;
@@ -113,8 +367,20 @@ public class GenerateData {
 			}
 		}
 
+		if (columnar != null) {
+			columnar.close();
+		}
+		if (compressed != null) {
+			compressed.close();
+		}
+		if (writer != null) {
+			writer.flush();
+		}
 		os.flush();
 		os.close();
+		if (index != null) {
+			index.close();
+		}
 
 		long totalTime = System.currentTimeMillis() - startTime;
 		//TODO display total number of data points
@@ -127,8 +393,18 @@ public class GenerateData {
 		return new DataOutputStream(new BufferedOutputStream(fos));
 	}
 	
-	static void WriteHeader(final DataOutputStream dout, final String metricName, final int numTagK, final int numTagV) throws IOException {
+	/** @return name of the m-th of numMetrics metrics */
+	static String MetricName(final String metricName, final int numMetrics, final int m) {
+		return metricName + ((numMetrics > 1) ? "." + m : "");
+	}
+
+	/** Fills the value dictionary and returns it as a Header */
+	static Header BuildHeader(final String metricName, final int numMetrics, final int numTagK, final int numTagV) {
+		values.clear();
 		values.add(metricName);
+		for (int m = 0; m < numMetrics; m++) {
+			values.add(MetricName(metricName, numMetrics, m));
+		}
 		for (int k = 0; k < numTagK; k++) {
 			values.add("tag"+k);
 		}
@@ -136,40 +412,10 @@ public class GenerateData {
 			values.add("value"+v);
 		}
 		
-		Header.Builder header = Header.newBuilder();
-		header.addAllValue(values);
-		
-		Header head = header.build();
-		int size = head.getSerializedSize();
-		dout.writeShort(size);
-		head.writeTo(dout);
+		return values.toHeader();
 	}
 
 	static int GetValueId(final String value) {
-		int id = values.indexOf(value);
-		if (id < 0) throw new IllegalArgumentException("could not find value id for: "+value);
-		return id;
-	}
-	
-	static void WriteRecord(DataOutputStream dout, String metricName, long time, int value, int[] tagValues) throws IOException {
-		
-		DataPoint.Builder dataPoint = DataPoint.newBuilder();
-		dataPoint
-		.setMetricId(GetValueId(metricName))
-		.setTimestamp(time)
-		.setIvalue(value);
-
-		for (int i = 0; i < tagValues.length; i++) {
-			DataPoint.Tag.Builder tag = DataPoint.Tag.newBuilder();
-			tag.setKeyId(GetValueId("tag"+i));
-			tag.setValueId(GetValueId("value"+tagValues[i]));
-
-			dataPoint.addTag(tag);
-		}
-
-		DataPoint dp = dataPoint.build();
-		int size = dp.getSerializedSize();
-		dout.writeShort(size);
-		dp.writeTo(dout);
+		return values.getId(value);
 	}
 }
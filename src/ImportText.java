@@ -0,0 +1,60 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import pbtest.io.Framing;
+import pbtest.io.TextImporter;
+
+public class ImportText {
+
+	/** Prints usage and exits.  */
+	static void usage() {
+		System.err.println("Usage: import [--threads n] [--varint] out.pb in.txt[.gz]...");
+		System.exit(-1);
+	}
+
+	public static void main(String[] args) throws IOException {
+		int threads = Runtime.getRuntime().availableProcessors();
+		Framing framing = Framing.SHORT;
+
+		int argIdx = 0;
+		for (; argIdx < args.length && args[argIdx].startsWith("--"); argIdx++) {
+			if (args[argIdx].equals("--threads")) {
+				if (argIdx + 1 >= args.length) {
+					usage();
+				}
+				try {
+					threads = Integer.parseInt(args[++argIdx]);
+				} catch (NumberFormatException e) {
+					threads = 0;
+				}
+				if (threads <= 0) {
+					System.err.println("threads must be a positive integer\n");
+					usage();
+				}
+			} else if (args[argIdx].equals("--varint")) {
+				framing = Framing.VARINT;
+			} else {
+				System.err.println("unknown option: " + args[argIdx] + "\n");
+				usage();
+			}
+		}
+		if (args.length - argIdx < 2) {
+			usage();
+		}
+
+		final String output = args[argIdx];
+		final List<String> inputs = Arrays.asList(args).subList(argIdx + 1, args.length);
+		final long startTime = System.currentTimeMillis();
+		final long count = new TextImporter(threads, framing).importFiles(inputs, output);
+
+		long totalTime = System.currentTimeMillis() - startTime;
+		long bytes = 0;
+		for (String input : inputs) {
+			bytes += new File(input).length();
+		}
+		System.out.printf("Imported %d data points in %dms (%.1f MB/s)\n", count, totalTime,
+				bytes / (1024.0 * 1024.0) / Math.max(totalTime, 1) * 1000);
+	}
+}
@@ -1,25 +1,46 @@
-import java.io.Closeable;
+import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 
-import org.hbase.async.Bytes;
-
 import pbtest.DataPointProtos.DataPoint;
 import pbtest.DataPointProtos.Header;
-
-import com.google.common.io.Closeables;
-import com.google.protobuf.InvalidProtocolBufferException;
+import pbtest.io.BlockHandler;
+import pbtest.io.ColumnBlock;
+import pbtest.io.ColumnarReader;
+import pbtest.io.CompressedBlockReader;
+import pbtest.io.DataPointCursor;
+import pbtest.io.Framing;
+import pbtest.io.LoadStats;
+import pbtest.io.MappedRecordReader;
+import pbtest.io.ParallelLoader;
+import pbtest.io.PipelinedLoader;
+import pbtest.io.PointColumns;
+import pbtest.io.RecordHandler;
+import pbtest.io.RecordSource;
+import pbtest.io.StreamingRecordReader;
+import pbtest.io.TimestampIndex;
+import pbtest.metrics.LoadMetrics;
+import pbtest.metrics.LoadPhase;
+import pbtest.store.SeriesStore;
 
 
 public class LoadData {
 
+	/**
+	 * If true, the modes that aggregate the points also compute the
+	 * distribution of the values, see {@link LoadStats#LoadStats(boolean)}
+	 */
+	static boolean valueStats;
+
+	/** Instrumentation of the load, null unless asked for */
+	static LoadMetrics metrics;
+
 	/** Prints usage and exits.  */
 	static void usage() {
-		System.err.println("Usage: load path");
+		System.err.println("Usage: load [--mmap] [--stream] [--flyweight] [--parallel [threads]] [--pipeline [decoders]] [--range start end] [--columnar] [--store] [--arrays] [--stats] [--metrics] path");
 		System.exit(-1);
 	}
 
@@ -29,17 +50,117 @@ public class LoadData {
 			usage();
 		}
 
-		String path = args[0];
+		boolean mmap = false;
+		boolean stream = false;
+		boolean flyweight = false;
+		int threads = 0;
+		int decoders = 0;
+		long[] range = null;
+		boolean columnar = false;
+		boolean store = false;
+		boolean arrays = false;
+		int argIdx = 0;
+		for (; argIdx < args.length && args[argIdx].startsWith("--"); argIdx++) {
+			if (args[argIdx].equals("--mmap")) {
+				mmap = true;
+			} else if (args[argIdx].equals("--stream")) {
+				stream = true;
+			} else if (args[argIdx].equals("--flyweight")) {
+				flyweight = true;
+			} else if (args[argIdx].equals("--parallel")) {
+				threads = Runtime.getRuntime().availableProcessors();
+				if (argIdx + 2 < args.length && !args[argIdx + 1].startsWith("--")) {
+					try {
+						threads = Integer.parseInt(args[++argIdx]);
+					} catch (NumberFormatException e) {
+						threads = 0;
+					}
+					if (threads <= 0) {
+						System.err.println("threads must be a positive integer\n");
+						usage();
+					}
+				}
+			} else if (args[argIdx].equals("--pipeline")) {
+				decoders = Math.max(1, Runtime.getRuntime().availableProcessors() - 2);
+				if (argIdx + 2 < args.length && !args[argIdx + 1].startsWith("--")) {
+					try {
+						decoders = Integer.parseInt(args[++argIdx]);
+					} catch (NumberFormatException e) {
+						decoders = 0;
+					}
+					if (decoders <= 0) {
+						System.err.println("decoders must be a positive integer\n");
+						usage();
+					}
+				}
+			} else if (args[argIdx].equals("--columnar")) {
+				columnar = true;
+			} else if (args[argIdx].equals("--store")) {
+				store = true;
+			} else if (args[argIdx].equals("--arrays")) {
+				arrays = true;
+			} else if (args[argIdx].equals("--stats")) {
+				valueStats = true;
+			} else if (args[argIdx].equals("--metrics")) {
+				metrics = new LoadMetrics();
+			} else if (args[argIdx].equals("--range")) {
+				if (argIdx + 3 >= args.length) {
+					usage();
+				}
+				try {
+					range = new long[] { Long.parseLong(args[argIdx + 1]), Long.parseLong(args[argIdx + 2]) };
+				} catch (NumberFormatException e) {
+					System.err.println("start and end must be timestamps\n");
+					usage();
+				}
+				argIdx += 2;
+			} else {
+				System.err.println("unknown option: " + args[argIdx] + "\n");
+				usage();
+			}
+		}
+		if (argIdx >= args.length) {
+			usage();
+		}
+
+		String path = args[argIdx];
 
 		final long startTime = System.currentTimeMillis();
 
-		final int count = loadData(path);
+		final long count;
+		final LoadPhase load = LoadPhase.begin("load", metrics);
+		if (store) {
+			count = loadDataStore(path);
+		} else if (arrays) {
+			count = loadDataArrays(path);
+		} else if (columnar) {
+			count = loadDataColumnar(path);
+		} else if (CompressedBlockReader.isCompressed(path)) {
+			count = loadDataCompressed(path, flyweight, threads, range);
+		} else if (range != null) {
+			count = loadDataRange(path, range[0], range[1]);
+		} else if (threads > 0) {
+			count = loadDataParallel(path, threads);
+		} else if (decoders > 0) {
+			count = loadDataPipelined(path, decoders);
+		} else if (stream) {
+			count = loadDataStreaming(path, flyweight);
+		} else if (mmap) {
+			count = loadDataMapped(path, flyweight);
+		} else {
+			count = loadData(path, flyweight);
+		}
+		load.setRecords(count);
+		load.close();
 
 		long totalTime = System.currentTimeMillis() - startTime;
 		displayAvgSpeed("loading PB file", totalTime/1000.0, count);
+		if (metrics != null) {
+			System.out.println(metrics.report());
+		}
 	}
 
-	private static void displayAvgSpeed(final String msg, final double time_delta, final int points) {
+	private static void displayAvgSpeed(final String msg, final double time_delta, final long points) {
 		System.out.println(String.format(msg + " : %d data points in %.3fs (%,.1f points/s)",
 				points, time_delta, (points / time_delta)));
 	}
@@ -68,86 +189,303 @@ public class LoadData {
 		return data;
 	}
 
-	static int loadData(final String path) throws IOException {
-		int count = 0;
+	/**
+	 * @param flyweight if true records are decoded in place with a
+	 * {@link DataPointCursor} instead of being parsed into DataPoint objects
+	 */
+	static long loadData(final String path, final boolean flyweight) throws IOException {
+		long count = 0;
 		DataPoint dataPoint;
+		final DataPointCursor cursor = new DataPointCursor();
 		
 		final long startTime = System.currentTimeMillis();
 		
 		// start by loading the whole file into a byte array
+		final LoadPhase read = LoadPhase.begin("read file", metrics);
 		final byte[] data = ReadAllBytes(path);
+		read.setBytes(data.length);
+		read.close();
 
 		System.out.printf("File loaded in %.2fs\n", (System.currentTimeMillis() - startTime) / 1000.0);
 		
+		final LoadPhase decode = LoadPhase.begin("decode", metrics);
 		// we start by reading the header
-		final short headerSize = Bytes.getShort(data);
-		int idx = 2;
+		final ByteBuffer buf = ByteBuffer.wrap(data);
+		final Framing framing = Framing.detect(buf);
+		int idx = framing.headerOffset();
+		final int headerSize = framing.readSize(buf, idx, data.length);
+		if (headerSize < 0) {
+			throw new IOException("file too small to contain a header");
+		}
+		idx += framing.prefixSize(headerSize);
 		final Header header = Header.PARSER.parseFrom(data, idx, headerSize);
 		idx += headerSize;
 
+		long batchStart = System.nanoTime();
 		while (idx < data.length) {
-			final short dpSize = Bytes.getShort(data, idx);
-			idx += 2;
-			dataPoint = DataPoint.PARSER.parseFrom(data, idx, dpSize);
+			final int dpSize = framing.readSize(buf, idx, data.length);
+			if (dpSize < 0) {
+				throw new IOException("truncated record at offset " + idx);
+			}
+			idx += framing.prefixSize(dpSize);
+			if (flyweight) {
+				cursor.wrap(data, idx, dpSize);
+			} else {
+				dataPoint = DataPoint.PARSER.parseFrom(data, idx, dpSize);
+			}
 			idx += dpSize;
 			// let's see if we can access the values correctly
 			count++;
+			if (metrics != null && count % LoadMetrics.BATCH_SIZE == 0) {
+				final long now = System.nanoTime();
+				metrics.recordBatch(now - batchStart, LoadMetrics.BATCH_SIZE);
+				batchStart = now;
+			}
+		}
+		if (metrics != null && count % LoadMetrics.BATCH_SIZE != 0) {
+			metrics.recordBatch(System.nanoTime() - batchStart, count % LoadMetrics.BATCH_SIZE);
 		}
+		decode.setRecords(count);
+		decode.close();
 
 		return count;
 	}
 
-	private static final class FastDataPointReader implements Closeable {
-		private final int BUF_SIZE = 100000;
-		private final int BUF_FILL_SIZE = 10000;
-		private final InputStream in;
-		private final ByteBuffer buf = ByteBuffer.allocate(BUF_SIZE);
+	/**
+	 * Same as {@link #loadData(String, boolean)} but walks the records over a
+	 * memory mapping of the file instead of copying it onto the heap.
+	 */
+	static long loadDataMapped(final String path, final boolean flyweight) throws IOException {
+		final long startTime = System.currentTimeMillis();
+
+		try (MappedRecordReader reader = new MappedRecordReader(path)) {
+			final Header header = reader.readHeader();
 
-		private FastDataPointReader(InputStream in) throws IOException {
-			this.in = in;
-			buf.limit(0);
-			fillBuffer();
+			final RecordHandler handler = flyweight ? new DataPointCursor() : new RecordHandler() {
+				private byte[] scratch = new byte[Short.MAX_VALUE];
+
+				@Override
+				public void handle(ByteBuffer buf, int offset, int length) throws IOException {
+					if (length > scratch.length) {
+						// varint framed records can be larger than 32767 bytes
+						scratch = new byte[length];
+					}
+					buf.position(offset);
+					buf.get(scratch, 0, length);
+					final DataPoint dataPoint = DataPoint.PARSER.parseFrom(scratch, 0, length);
+				}
+			};
+			final long count = reader.readRecords(handler);
+
+			System.out.printf("File mapped and read in %.2fs\n", (System.currentTimeMillis() - startTime) / 1000.0);
+			return count;
 		}
+	}
 
-		public DataPoint read() throws IOException {
-			fillBuffer();
-			if (buf.remaining() > 0) {
-				return read(buf);
-			} else {
-				return null;
+	/**
+	 * Same as {@link #loadData(String, boolean)} but reads the file through a
+	 * fixed size buffer, for files larger than the heap.
+	 */
+	static long loadDataStreaming(final String path, final boolean flyweight) throws IOException {
+		try (StreamingRecordReader reader = new StreamingRecordReader(path)) {
+			reader.setMetrics(metrics);
+			final Header header = reader.readHeader();
+			if (flyweight) {
+				final DataPointCursor cursor = new DataPointCursor();
+				final LoadStats stats = new LoadStats(valueStats);
+				while (reader.next(cursor)) {
+					stats.add(cursor);
+				}
+				System.out.println(stats);
+				return stats.getCount();
+			}
+
+			long count = 0;
+			DataPoint dataPoint;
+			while ((dataPoint = reader.read()) != null) {
+				count++;
+			}
+			return count;
+		}
+	}
+
+	/**
+	 * Reads, decodes and consumes the file on separate threads, with the given
+	 * number of decoder threads.
+	 */
+	static long loadDataPipelined(final String path, final int decoders) throws IOException {
+		final LoadStats stats = new LoadStats(valueStats);
+		final PipelinedLoader loader = new PipelinedLoader(decoders);
+		loader.setMetrics(metrics);
+		loader.load(path, new BlockHandler() {
+			@Override
+			public void handle(ColumnBlock block) {
+				stats.add(block);
 			}
+		});
+		System.out.println(stats);
+		return stats.getCount();
+	}
+
+	/**
+	 * Decodes chunks of a memory mapped file concurrently on the given number
+	 * of threads.
+	 */
+	static long loadDataParallel(final String path, final int threads) throws IOException {
+		try (MappedRecordReader reader = new MappedRecordReader(path);
+				ParallelLoader loader = new ParallelLoader(threads, valueStats)) {
+			final Header header = reader.readHeader();
+			loader.setMetrics(metrics);
+			final LoadStats stats = loader.load(reader);
+			System.out.println(stats);
+			return stats.getCount();
 		}
+	}
 
-		public DataPoint read(ByteBuffer buf) throws InvalidProtocolBufferException {
-			final short size = buf.getShort();
-			final byte[] bytes = new byte[size]; //TODO have a common byte array
+	/**
+	 * Decodes only the slice of the file holding records in [start, end), as
+	 * found in the file's {@link TimestampIndex}.
+	 * @return number of records in the time window
+	 */
+	static long loadDataRange(final String path, final long start, final long end) throws IOException {
+		final TimestampIndex index = TimestampIndex.read(TimestampIndex.sidecarPath(path));
 
-			buf.get(bytes);
+		try (MappedRecordReader reader = new MappedRecordReader(path)) {
+			final Header header = reader.readHeader();
+			final long[] slice = index.range(start, end, reader.size());
+			final DataPointCursor cursor = new DataPointCursor();
+			final LoadStats stats = new LoadStats(valueStats);
 
-			return DataPoint.parseFrom(bytes);
+			reader.readRecords(slice[0], slice[1], new RecordHandler() {
+				@Override
+				public void handle(ByteBuffer buf, int offset, int length) throws IOException {
+					final long timestamp = cursor.wrap(buf, offset, length).getTimestamp();
+					if (timestamp >= start && timestamp < end) {
+						stats.add(cursor);
+					}
+				}
+			});
+
+			System.out.printf("Read %,d bytes out of %,d\n", slice[1] - slice[0], reader.size());
+			System.out.println(stats);
+			return stats.getCount();
 		}
+	}
+
+	/**
+	 * Loads a block compressed container. Blocks are decompressed on the given
+	 * number of threads, or sequentially if threads is 0. If range is not null
+	 * only the blocks that may hold timestamps in [range[0], range[1]) are
+	 * decompressed.
+	 */
+	static long loadDataCompressed(final String path, final boolean flyweight, final int threads, final long[] range) throws IOException {
+		try (CompressedBlockReader reader = new CompressedBlockReader(path)) {
+			final Header header = reader.getHeader();
+			final LoadStats stats;
 
-		private void fillBuffer() throws IOException {
-			if (buf.remaining() < BUF_FILL_SIZE) {
-				buf.compact();
-				int n = in.read(buf.array(), buf.position(), buf.remaining());
-				if (n == -1) {
-					buf.flip();
-				} else {
-					buf.limit(buf.position() + n);
-					buf.position(0);
+			if (threads > 0) {
+				try (ParallelLoader loader = new ParallelLoader(threads, valueStats)) {
+					loader.setMetrics(metrics);
+					stats = loader.load(reader);
 				}
+			} else if (range != null) {
+				final DataPointCursor cursor = new DataPointCursor();
+				final LoadStats rangeStats = new LoadStats(valueStats);
+				reader.readRecords(reader.dataOffset(), reader.size(), range[0], range[1], new RecordHandler() {
+					@Override
+					public void handle(ByteBuffer buf, int offset, int length) throws IOException {
+						final long timestamp = cursor.wrap(buf, offset, length).getTimestamp();
+						if (timestamp >= range[0] && timestamp < range[1]) {
+							rangeStats.add(cursor);
+						}
+					}
+				});
+				stats = rangeStats;
+			} else {
+				final DataPointCursor cursor = new DataPointCursor();
+				return reader.readRecords(reader.dataOffset(), reader.size(), new RecordHandler() {
+					@Override
+					public void handle(ByteBuffer buf, int offset, int length) throws IOException {
+						if (flyweight) {
+							cursor.wrap(buf, offset, length);
+						} else {
+							final DataPoint dataPoint = DataPoint.PARSER.parseFrom(buf.array(), offset, length);
+						}
+					}
+				});
 			}
+
+			System.out.println(stats);
+			return stats.getCount();
 		}
+	}
 
-		@Override
-		public void close() {
-			try {
-				Closeables.close(in, true);
-			} catch (IOException e) {
-				System.err.println(e.getMessage());
-			}
+	/**
+	 * Loads a .pb or .pbz file into an off-heap {@link SeriesStore}.
+	 */
+	static long loadDataStore(final String path) throws IOException {
+		final SeriesStore store = new SeriesStore();
+		try (RecordSource reader = CompressedBlockReader.isCompressed(path)
+				? new CompressedBlockReader(path) : new MappedRecordReader(path)) {
+			final DataPointCursor cursor = new DataPointCursor();
+			reader.readRecords(reader.dataOffset(), reader.size(), new RecordHandler() {
+				@Override
+				public void handle(ByteBuffer buf, int offset, int length) throws IOException {
+					store.add(cursor.wrap(buf, offset, length));
+				}
+			});
+		}
+
+		final Runtime runtime = Runtime.getRuntime();
+		System.out.printf("Stored %,d points in %,d series, %,d MB off-heap, %,d MB heap used\n",
+				store.size(), store.seriesCount(), store.offHeapSize() >> 20, (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+		return store.size();
+	}
+
+	/**
+	 * Decodes a .pb or .pbz file into {@link PointColumns}, then aggregates
+	 * the columns.
+	 */
+	static long loadDataArrays(final String path) throws IOException {
+		final PointColumns columns = new PointColumns();
+		final LoadPhase decode = LoadPhase.begin("decode", metrics);
+		try (RecordSource reader = CompressedBlockReader.isCompressed(path)
+				? new CompressedBlockReader(path) : new MappedRecordReader(path)) {
+			final DataPointCursor cursor = new DataPointCursor();
+			reader.readRecords(reader.dataOffset(), reader.size(), new RecordHandler() {
+				@Override
+				public void handle(ByteBuffer buf, int offset, int length) throws IOException {
+					columns.add(cursor.wrap(buf, offset, length));
+				}
+			});
 		}
+		decode.setRecords(columns.size());
+		decode.close();
+
+		final long startTime = System.nanoTime();
+		final LoadPhase aggregate = LoadPhase.begin("aggregate", metrics);
+		final LoadStats stats = new LoadStats(valueStats);
+		stats.add(columns);
+		aggregate.setRecords(columns.size());
+		aggregate.close();
+		System.out.printf("Aggregated in %.3fms\n", (System.nanoTime() - startTime) / 1e6);
+		System.out.println(stats);
+		System.out.printf("%,d MB in columns, %.1f bytes per point\n", columns.getSizeInBytes() >> 20,
+				(double) columns.getSizeInBytes() / Math.max(1, columns.size()));
+		return columns.size();
 	}
 
+	/** Scans a file written in the columnar format, one block at a time. */
+	static long loadDataColumnar(final String path) throws IOException {
+		try (ColumnarReader reader = new ColumnarReader(new BufferedInputStream(new FileInputStream(path), 1 << 20))) {
+			final Header header = reader.getHeader();
+			final ColumnBlock block = new ColumnBlock();
+			final LoadStats stats = new LoadStats(valueStats);
+			while (reader.next(block)) {
+				stats.add(block);
+			}
+			System.out.println(stats);
+			return stats.getCount();
+		}
+	}
 }
@@ -0,0 +1,142 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import pbtest.DataPointProtos.Header;
+import pbtest.index.TagIndex;
+import pbtest.io.CompressedBlockReader;
+import pbtest.io.DataPointCursor;
+import pbtest.io.MappedRecordReader;
+import pbtest.io.RecordHandler;
+import pbtest.io.RecordSource;
+import pbtest.query.Aggregator;
+import pbtest.query.Query;
+import pbtest.query.QueryEngine;
+import pbtest.query.QueryResult;
+import pbtest.query.StreamQuery;
+import pbtest.store.SeriesStore;
+import pbtest.utils.Dictionary;
+
+public class QueryData {
+
+	/** Prints usage and exits.  */
+	static void usage() {
+		System.err.println("Usage: query [--stream] [--tag key=value[|value...]|key=*]... path metric start end interval [sum|avg|min|max|count]");
+		System.exit(-1);
+	}
+
+	public static void main(String[] args) throws IOException {
+		boolean stream = false;
+		final List<String> tags = new ArrayList<>();
+		int argIdx = 0;
+		for (; argIdx < args.length && args[argIdx].startsWith("--"); argIdx++) {
+			if (args[argIdx].equals("--stream")) {
+				stream = true;
+			} else if (args[argIdx].equals("--tag")) {
+				if (argIdx + 1 >= args.length || args[argIdx + 1].indexOf('=') <= 0) {
+					usage();
+				}
+				tags.add(args[++argIdx]);
+			} else {
+				System.err.println("unknown option: " + args[argIdx] + "\n");
+				usage();
+			}
+		}
+		args = Arrays.copyOfRange(args, argIdx, args.length);
+
+		if (args.length < 5) {
+			usage();
+		}
+
+		final String path = args[0];
+		final String metric = args[1];
+		long start = 0;
+		long end = 0;
+		long interval = 0;
+		try {
+			start = Long.parseLong(args[2]);
+			end = Long.parseLong(args[3]);
+			interval = Long.parseLong(args[4]);
+		} catch (NumberFormatException e) {
+			System.err.println("start, end and interval must be integers\n");
+			usage();
+		}
+		if (start >= end || interval <= 0) {
+			System.err.println("start must be before end and interval must be a positive integer\n");
+			usage();
+		}
+		Aggregator aggregator = Aggregator.AVG;
+		if (args.length > 5) {
+			try {
+				aggregator = Aggregator.valueOf(args[5].toUpperCase());
+			} catch (IllegalArgumentException e) {
+				System.err.println("unknown aggregator: " + args[5] + "\n");
+				usage();
+			}
+		}
+
+		try (RecordSource reader = CompressedBlockReader.isCompressed(path)
+				? new CompressedBlockReader(path) : new MappedRecordReader(path)) {
+			final Header header = (reader instanceof CompressedBlockReader)
+					? ((CompressedBlockReader) reader).getHeader() : ((MappedRecordReader) reader).readHeader();
+			final Dictionary dictionary = Dictionary.fromHeader(header);
+			if (!dictionary.contains(metric)) {
+				System.err.println("unknown metric: " + metric);
+				System.exit(-1);
+			}
+
+			final Query query = new Query(dictionary.getId(metric), start, end, interval, aggregator);
+			for (String tag : tags) {
+				final String key = tag.substring(0, tag.indexOf('='));
+				if (!dictionary.contains(key)) {
+					System.err.println("unknown tag key: " + key);
+					System.exit(-1);
+				}
+				for (String value : tag.substring(tag.indexOf('=') + 1).split("\\|")) {
+					if (!value.equals("*") && !dictionary.contains(value)) {
+						System.err.println("unknown tag value: " + value);
+						System.exit(-1);
+					}
+					query.filter(dictionary.getId(key), value.equals("*") ? Query.ANY_VALUE : dictionary.getId(value));
+				}
+			}
+
+			final QueryResult result;
+			if (stream) {
+				long startTime = System.currentTimeMillis();
+				final StreamQuery streamQuery = new StreamQuery(query);
+				reader.readRecords(reader.dataOffset(), reader.size(), streamQuery);
+				result = streamQuery.result();
+				System.out.printf("Query streamed in %dms\n", System.currentTimeMillis() - startTime);
+			} else {
+				long startTime = System.currentTimeMillis();
+				final SeriesStore store = new SeriesStore();
+				final DataPointCursor cursor = new DataPointCursor();
+				reader.readRecords(reader.dataOffset(), reader.size(), new RecordHandler() {
+					@Override
+					public void handle(ByteBuffer buf, int offset, int length) throws IOException {
+						store.add(cursor.wrap(buf, offset, length));
+					}
+				});
+				System.out.printf("Loaded %,d points in %,d series in %dms\n", store.size(), store.seriesCount(),
+						System.currentTimeMillis() - startTime);
+
+				startTime = System.currentTimeMillis();
+				final TagIndex index = TagIndex.build(store);
+				System.out.printf("Indexed %,d tags in %dms, %,d bytes\n", index.getTagCount(),
+						System.currentTimeMillis() - startTime, index.getSizeInBytes());
+
+				startTime = System.nanoTime();
+				result = new QueryEngine(store, index).run(query);
+				System.out.printf("Query answered in %.3fms\n", (System.nanoTime() - startTime) / 1e6);
+			}
+
+			for (int i = 0; i < result.size(); i++) {
+				System.out.printf("%d %s %d\n", result.getTimestamp(i), result.getValue(i), result.getCount(i));
+			}
+			System.out.printf("%,d data points in %d intervals\n", result.getPointCount(), result.size());
+		}
+	}
+}
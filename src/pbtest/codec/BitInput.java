@@ -0,0 +1,50 @@
+package pbtest.codec;
+
+import java.io.IOException;
+
+/**
+ * Reads bits written by {@link BitOutput}, most significant bit first.
+ */
+public final class BitInput {
+
+	private byte[] buf;
+	private int pos;
+	private int limit;
+	private long acc;
+	private int accBits;
+
+	public BitInput wrap(final byte[] buf, final int offset, final int length) {
+		this.buf = buf;
+		this.pos = offset;
+		this.limit = offset + length;
+		this.acc = 0;
+		this.accBits = 0;
+		return this;
+	}
+
+	public boolean readBit() throws IOException {
+		return readBits(1) != 0;
+	}
+
+	/** Reads n bits, 0 &lt;= n &lt;= 64 */
+	public long readBits(final int n) throws IOException {
+		if (n > 32) {
+			final long high = readBits(n - 32);
+			return (high << 32) | readBits(32);
+		}
+		while (accBits < n) {
+			if (pos == limit) {
+				throw new IOException("unexpected end of bit stream");
+			}
+			acc = (acc << 8) | (buf[pos++] & 0xff);
+			accBits += 8;
+		}
+		accBits -= n;
+		return (acc >>> accBits) & ((1L << n) - 1);
+	}
+
+	/** Skips the padding bits up to the next byte boundary */
+	public void align() {
+		accBits -= accBits % 8;
+	}
+}
@@ -0,0 +1,70 @@
+package pbtest.codec;
+
+import java.util.Arrays;
+
+/**
+ * Growable buffer bits are appended to, most significant bit first.
+ */
+public final class BitOutput {
+
+	private byte[] buf;
+	private int bytes;
+	/** pending bits, not yet copied to buf */
+	private long acc;
+	private int accBits;
+
+	public BitOutput() {
+		this(4096);
+	}
+
+	public BitOutput(final int capacity) {
+		buf = new byte[Math.max(8, capacity)];
+	}
+
+	public void reset() {
+		bytes = 0;
+		acc = 0;
+		accBits = 0;
+	}
+
+	public void writeBit(final boolean bit) {
+		writeBits(bit ? 1 : 0, 1);
+	}
+
+	/** Appends the n lowest bits of value, 0 &lt;= n &lt;= 64 */
+	public void writeBits(final long value, final int n) {
+		if (n > 32) {
+			writeBits(value >>> 32, n - 32);
+			writeBits(value, 32);
+			return;
+		}
+		if (n == 0) {
+			return;
+		}
+		acc = (acc << n) | (value & ((1L << n) - 1));
+		accBits += n;
+		while (accBits >= 8) {
+			accBits -= 8;
+			if (bytes == buf.length) {
+				buf = Arrays.copyOf(buf, bytes * 2);
+			}
+			buf[bytes++] = (byte) (acc >>> accBits);
+		}
+	}
+
+	/** Pads the last byte with zero bits */
+	public void flush() {
+		if (accBits > 0) {
+			writeBits(0, 8 - accBits);
+		}
+	}
+
+	/** @return number of complete bytes, call {@link #flush()} first to include all bits */
+	public int size() {
+		return bytes;
+	}
+
+	public byte[] array() {
+		return buf;
+	}
+}
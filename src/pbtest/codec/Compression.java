@@ -0,0 +1,174 @@
+package pbtest.codec;
+
+import java.io.IOException;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import net.jpountz.lz4.LZ4Compressor;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+
+import org.xerial.snappy.Snappy;
+
+/**
+ * Block compression codecs. All methods are thread safe.
+ */
+public enum Compression {
+
+	NONE((byte) 0) {
+		@Override
+		public int maxCompressedLength(final int length) {
+			return length;
+		}
+
+		@Override
+		public int compress(final byte[] src, final int length, final byte[] dst) {
+			System.arraycopy(src, 0, dst, 0, length);
+			return length;
+		}
+
+		@Override
+		public void decompress(final byte[] src, final int length, final byte[] dst, final int uncompressedLength) throws IOException {
+			if (length != uncompressedLength) {
+				throw new IOException("corrupt block: " + length + " != " + uncompressedLength);
+			}
+			System.arraycopy(src, 0, dst, 0, length);
+		}
+	},
+
+	DEFLATE((byte) 1) {
+		@Override
+		public int maxCompressedLength(final int length) {
+			// zlib's compressBound
+			return length + (length >> 12) + (length >> 14) + (length >> 25) + 13;
+		}
+
+		@Override
+		public int compress(final byte[] src, final int length, final byte[] dst) {
+			final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+			try {
+				deflater.setInput(src, 0, length);
+				deflater.finish();
+				int n = 0;
+				while (!deflater.finished()) {
+					n += deflater.deflate(dst, n, dst.length - n);
+				}
+				return n;
+			} finally {
+				deflater.end();
+			}
+		}
+
+		@Override
+		public void decompress(final byte[] src, final int length, final byte[] dst, final int uncompressedLength) throws IOException {
+			final Inflater inflater = new Inflater();
+			try {
+				inflater.setInput(src, 0, length);
+				int n = 0;
+				while (n < uncompressedLength && !inflater.finished()) {
+					final int inflated = inflater.inflate(dst, n, uncompressedLength - n);
+					if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+						break;
+					}
+					n += inflated;
+				}
+				if (n != uncompressedLength) {
+					throw new IOException("corrupt block: inflated " + n + " bytes out of " + uncompressedLength);
+				}
+			} catch (DataFormatException e) {
+				throw new IOException("corrupt block", e);
+			} finally {
+				inflater.end();
+			}
+		}
+	},
+
+	SNAPPY((byte) 2) {
+		@Override
+		public int maxCompressedLength(final int length) {
+			return Snappy.maxCompressedLength(length);
+		}
+
+		@Override
+		public int compress(final byte[] src, final int length, final byte[] dst) throws IOException {
+			return Snappy.compress(src, 0, length, dst, 0);
+		}
+
+		@Override
+		public void decompress(final byte[] src, final int length, final byte[] dst, final int uncompressedLength) throws IOException {
+			final int n = Snappy.uncompress(src, 0, length, dst, 0);
+			if (n != uncompressedLength) {
+				throw new IOException("corrupt block: uncompressed " + n + " bytes out of " + uncompressedLength);
+			}
+		}
+	},
+
+	LZ4((byte) 3) {
+		@Override
+		public int maxCompressedLength(final int length) {
+			return Lz4.COMPRESSOR.maxCompressedLength(length);
+		}
+
+		@Override
+		public int compress(final byte[] src, final int length, final byte[] dst) {
+			return Lz4.COMPRESSOR.compress(src, 0, length, dst, 0, dst.length);
+		}
+
+		@Override
+		public void decompress(final byte[] src, final int length, final byte[] dst, final int uncompressedLength) throws IOException {
+			final int n;
+			try {
+				// the safe decompressor checks its input, blocks come from disk
+				n = Lz4.DECOMPRESSOR.decompress(src, 0, length, dst, 0, uncompressedLength);
+			} catch (RuntimeException e) {
+				throw new IOException("corrupt block", e);
+			}
+			if (n != uncompressedLength) {
+				throw new IOException("corrupt block: uncompressed " + n + " bytes out of " + uncompressedLength);
+			}
+		}
+	};
+
+	/** LZ4 codecs, created on first use */
+	private static final class Lz4 {
+		static final LZ4Compressor COMPRESSOR = LZ4Factory.fastestInstance().fastCompressor();
+		static final LZ4SafeDecompressor DECOMPRESSOR = LZ4Factory.fastestInstance().safeDecompressor();
+	}
+
+	private final byte id;
+
+	private Compression(final byte id) {
+		this.id = id;
+	}
+
+	/** @return id of the codec, as stored in files */
+	public byte id() {
+		return id;
+	}
+
+	public static Compression fromId(final byte id) throws IOException {
+		for (Compression compression : values()) {
+			if (compression.id == id) {
+				return compression;
+			}
+		}
+		throw new IOException("unknown compression codec: " + id);
+	}
+
+	/** @return size of the buffer needed to compress length bytes */
+	public abstract int maxCompressedLength(int length);
+
+	/**
+	 * Compresses src[0, length) into dst, which must hold at least
+	 * {@link #maxCompressedLength(int)} bytes.
+	 * @return compressed size
+	 */
+	public abstract int compress(byte[] src, int length, byte[] dst) throws IOException;
+
+	/**
+	 * Decompresses src[0, length) into dst[0, uncompressedLength).
+	 * @throws IOException if the data is corrupt
+	 */
+	public abstract void decompress(byte[] src, int length, byte[] dst, int uncompressedLength) throws IOException;
+}
@@ -0,0 +1,171 @@
+package pbtest.codec;
+
+import java.io.IOException;
+
+/**
+ * Column encodings in the style of Facebook's Gorilla paper.
+ * <ul>
+ * <li>timestamps are stored as delta-of-delta, so a regular series costs one
+ * bit per point</li>
+ * <li>integers are stored as zig-zag deltas from the previous value, a
+ * repeated value costs one bit</li>
+ * <li>floats are XORed with the previous value and only the meaningful bits
+ * of the result are stored</li>
+ * </ul>
+ * The first value of each column is stored verbatim.
+ */
+public final class GorillaCodec {
+
+	private GorillaCodec() {
+	}
+
+	public static void encodeTimestamps(final long[] values, final int n, final BitOutput out) {
+		if (n == 0) {
+			return;
+		}
+		out.writeBits(values[0], 64);
+		long prevDelta = 0;
+		for (int i = 1; i < n; i++) {
+			final long delta = values[i] - values[i - 1];
+			writeVarBits(delta - prevDelta, out);
+			prevDelta = delta;
+		}
+	}
+
+	public static void decodeTimestamps(final BitInput in, final long[] values, final int n) throws IOException {
+		if (n == 0) {
+			return;
+		}
+		long value = in.readBits(64);
+		values[0] = value;
+		long delta = 0;
+		for (int i = 1; i < n; i++) {
+			delta += readVarBits(in);
+			value += delta;
+			values[i] = value;
+		}
+	}
+
+	public static void encodeInts(final int[] values, final int n, final BitOutput out) {
+		int prev = 0;
+		for (int i = 0; i < n; i++) {
+			writeVarBits((long) values[i] - prev, out);
+			prev = values[i];
+		}
+	}
+
+	public static void decodeInts(final BitInput in, final int[] values, final int n) throws IOException {
+		int value = 0;
+		for (int i = 0; i < n; i++) {
+			value += (int) readVarBits(in);
+			values[i] = value;
+		}
+	}
+
+	public static void encodeBytes(final byte[] values, final int n, final BitOutput out) {
+		int prev = 0;
+		for (int i = 0; i < n; i++) {
+			writeVarBits(values[i] - prev, out);
+			prev = values[i];
+		}
+	}
+
+	public static void decodeBytes(final BitInput in, final byte[] values, final int n) throws IOException {
+		int value = 0;
+		for (int i = 0; i < n; i++) {
+			value += (int) readVarBits(in);
+			values[i] = (byte) value;
+		}
+	}
+
+	public static void encodeFloats(final float[] values, final int n, final BitOutput out) {
+		int prev = 0;
+		int prevLeading = -1;
+		int prevTrailing = 0;
+		for (int i = 0; i < n; i++) {
+			final int bits = Float.floatToRawIntBits(values[i]);
+			final int xor = bits ^ prev;
+			prev = bits;
+
+			if (xor == 0) {
+				out.writeBits(0, 1);
+				continue;
+			}
+
+			final int leading = Integer.numberOfLeadingZeros(xor);
+			final int trailing = Integer.numberOfTrailingZeros(xor);
+			if (prevLeading >= 0 && leading >= prevLeading && trailing >= prevTrailing) {
+				// meaningful bits fit in the previous window
+				out.writeBits(0b10, 2);
+				out.writeBits(xor >>> prevTrailing, 32 - prevLeading - prevTrailing);
+			} else {
+				final int length = 32 - leading - trailing;
+				out.writeBits(0b11, 2);
+				out.writeBits(leading, 5);
+				out.writeBits(length - 1, 5);
+				out.writeBits(xor >>> trailing, length);
+				prevLeading = leading;
+				prevTrailing = trailing;
+			}
+		}
+	}
+
+	public static void decodeFloats(final BitInput in, final float[] values, final int n) throws IOException {
+		int prev = 0;
+		int leading = 0;
+		int trailing = 0;
+		for (int i = 0; i < n; i++) {
+			if (in.readBit()) {
+				if (in.readBit()) {
+					leading = (int) in.readBits(5);
+					final int length = (int) in.readBits(5) + 1;
+					trailing = 32 - leading - length;
+				}
+				prev ^= (int) in.readBits(32 - leading - trailing) << trailing;
+			}
+			values[i] = Float.intBitsToFloat(prev);
+		}
+	}
+
+	/**
+	 * Stores v with a prefix code sized for small values:
+	 * '0' for 0, '10' + 7 bits, '110' + 9 bits, '1110' + 12 bits, and
+	 * '1111' + 64 bits for anything else. Values are zig-zag encoded.
+	 */
+	private static void writeVarBits(final long v, final BitOutput out) {
+		if (v == 0) {
+			out.writeBits(0, 1);
+			return;
+		}
+		final long zz = (v << 1) ^ (v >> 63);
+		if ((zz >>> 7) == 0) {
+			out.writeBits(0b10, 2);
+			out.writeBits(zz, 7);
+		} else if ((zz >>> 9) == 0) {
+			out.writeBits(0b110, 3);
+			out.writeBits(zz, 9);
+		} else if ((zz >>> 12) == 0) {
+			out.writeBits(0b1110, 4);
+			out.writeBits(zz, 12);
+		} else {
+			out.writeBits(0b1111, 4);
+			out.writeBits(zz, 64);
+		}
+	}
+
+	private static long readVarBits(final BitInput in) throws IOException {
+		final long zz;
+		if (!in.readBit()) {
+			return 0;
+		} else if (!in.readBit()) {
+			zz = in.readBits(7);
+		} else if (!in.readBit()) {
+			zz = in.readBits(9);
+		} else if (!in.readBit()) {
+			zz = in.readBits(12);
+		} else {
+			zz = in.readBits(64);
+		}
+		return (zz >>> 1) ^ -(zz & 1);
+	}
+}
@@ -0,0 +1,171 @@
+package pbtest.gen;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import pbtest.DataPointProtos.Header;
+import pbtest.io.DataPointWriter;
+import pbtest.io.Framing;
+
+/**
+ * Generates many metrics concurrently, one .pb file per metric, following a
+ * {@link Workload}. Each metric draws from its own {@link SplittableRandom}
+ * stream, split from the seed in metric order before any work is scheduled, so
+ * the content of every file only depends on the seed and not on the number of
+ * threads or on scheduling.
+ * <p>
+ * Points follow the same random walk as {@code GenerateData}: the value moves
+ * by up to +/- 50 at every point. The header of every file holds the metric
+ * name followed by the tag keys and values of the workload, so the ids of the
+ * tags are the same in all files and are computed once.
+ */
+public final class ParallelGenerator {
+
+	private static final int RANGE = 101;
+	private static final int GAP = 50;
+
+	private final String metricName;
+	private final int numMetrics;
+	private final Workload workload;
+	private final Framing framing;
+
+	/** serialized header values shared by all metrics: tag keys then tag values */
+	private final byte[] sharedHeader;
+	private final int[] tagKeyIds;
+	private final int[] valueIds;
+
+	public ParallelGenerator(final String metricName, final int numMetrics, final Workload workload, final Framing framing) {
+		if (numMetrics <= 0) {
+			throw new IllegalArgumentException("invalid number of metrics: " + numMetrics);
+		}
+		this.metricName = metricName;
+		this.numMetrics = numMetrics;
+		this.workload = workload;
+		this.framing = framing;
+
+		// id 0 is the metric name
+		final int numTagK = workload.getNumTagK();
+		final int numTagV = workload.getNumTagV();
+		final Header.Builder shared = Header.newBuilder();
+		tagKeyIds = new int[numTagK];
+		for (int k = 0; k < numTagK; k++) {
+			shared.addValue("tag" + k);
+			tagKeyIds[k] = 1 + k;
+		}
+		valueIds = new int[numTagV];
+		for (int v = 0; v < numTagV; v++) {
+			shared.addValue("value" + v);
+			valueIds[v] = 1 + numTagK + v;
+		}
+		sharedHeader = shared.build().toByteArray();
+	}
+
+	/** @return name of the m-th metric, also used as its file name */
+	public String metricName(final int m) {
+		return metricName + "." + m;
+	}
+
+	/** @return the file the m-th metric is written to */
+	public File metricFile(final int m) {
+		return new File(metricName(m) + ".pb");
+	}
+
+	/**
+	 * Generates all metrics on a pool of the given number of threads.
+	 * @param startTime time of the first point of every metric, in milliseconds
+	 * @return total number of points written
+	 */
+	public long generate(final long startTime, final int days, final long seed, final int threads) throws IOException {
+		// split all streams upfront, in metric order, so that they don't depend on scheduling
+		final SplittableRandom root = new SplittableRandom(seed);
+		final List<Callable<Long>> tasks = new ArrayList<>(numMetrics);
+		for (int m = 0; m < numMetrics; m++) {
+			final int metric = m;
+			final SplittableRandom rand = root.split();
+			tasks.add(new Callable<Long>() {
+				@Override
+				public Long call() throws IOException {
+					try (OutputStream out = new FileOutputStream(metricFile(metric))) {
+						return generateMetric(out, metric, startTime, days, rand);
+					}
+				}
+			});
+		}
+
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			final List<Future<Long>> results = new ArrayList<>(numMetrics);
+			for (Callable<Long> task : tasks) {
+				results.add(pool.submit(task));
+			}
+			long count = 0;
+			for (Future<Long> result : results) {
+				count += result.get();
+			}
+			return count;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while generating " + metricName, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("failed to generate " + metricName, e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Writes the header and all points of the m-th metric.
+	 * @return number of points written
+	 */
+	long generateMetric(final OutputStream out, final int m, final long startTime, final int days,
+			final SplittableRandom rand) throws IOException {
+		// repeated fields of concatenated messages are merged, the metric name gets id 0
+		final byte[] name = Header.newBuilder().addValue(metricName(m)).build().toByteArray();
+		final ByteArrayOutputStream header = new ByteArrayOutputStream(name.length + sharedHeader.length);
+		header.write(name);
+		header.write(sharedHeader);
+		framing.writeHeader(out, header.toByteArray());
+		final DataPointWriter writer = new DataPointWriter(out, framing);
+
+		final int numTagK = workload.getNumTagK();
+		final TagDistribution tagValues = workload.getTagValues();
+		final int pph = workload.pph(m);
+		final boolean isFloat = workload.isFloat(m);
+
+		final int[] tagValueIds = new int[numTagK];
+		long time = (pph > 3600) ? startTime : startTime / 1000;
+		final int timeInc = (pph > 3600) ? 3600000 / pph : 3600 / pph;
+		int value = rand.nextInt(RANGE) - GAP;
+		float fvalue = value;
+		final long count = (long) days * 24 * pph;
+		for (long i = 0; i < count; i++) {
+			for (int k = 0; k < numTagK; k++) {
+				tagValueIds[k] = valueIds[tagValues.sample(rand)];
+			}
+			if (isFloat) {
+				writer.write(0, time, true, fvalue, false, 0, tagKeyIds, tagValueIds, numTagK);
+				fvalue += (float) (rand.nextDouble() * 2 - 1) * GAP;
+			} else {
+				writer.write(0, time, value, tagKeyIds, tagValueIds, numTagK);
+				value += rand.nextInt(RANGE) - GAP;
+			}
+			time += timeInc;
+		}
+		writer.flush();
+		return count;
+	}
+}
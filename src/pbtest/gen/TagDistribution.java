@@ -0,0 +1,154 @@
+package pbtest.gen;
+
+import java.util.SplittableRandom;
+
+/**
+ * Distribution of the values of a tag, over the indices [0, size()). Instances
+ * are immutable and can be shared by all generator threads. Sampling takes
+ * constant time whatever the distribution.
+ */
+public abstract class TagDistribution {
+
+	private final int size;
+
+	TagDistribution(final int size) {
+		if (size <= 0) {
+			throw new IllegalArgumentException("invalid number of tag values: " + size);
+		}
+		this.size = size;
+	}
+
+	/** @return number of distinct values */
+	public int size() {
+		return size;
+	}
+
+	/** @return index of the next value, in [0, size()) */
+	public abstract int sample(SplittableRandom rand);
+
+	public static TagDistribution uniform(final int size) {
+		return new TagDistribution(size) {
+			@Override
+			public int sample(final SplittableRandom rand) {
+				return rand.nextInt(size());
+			}
+		};
+	}
+
+	/**
+	 * Zipfian distribution, value i is picked with a probability proportional to
+	 * 1 / (i + 1)^exponent.
+	 */
+	public static TagDistribution zipf(final int size, final double exponent) {
+		if (!(exponent > 0)) {
+			throw new IllegalArgumentException("invalid zipf exponent: " + exponent);
+		}
+		final double[] weights = new double[size];
+		for (int i = 0; i < size; i++) {
+			weights[i] = 1 / Math.pow(i + 1, exponent);
+		}
+		return new AliasTable(weights);
+	}
+
+	/**
+	 * The first hotFraction of the values are picked with probability
+	 * hotProbability, the others share the rest.
+	 */
+	public static TagDistribution hotSet(final int size, final double hotFraction, final double hotProbability) {
+		if (!(hotFraction > 0 && hotFraction <= 1) || !(hotProbability >= 0 && hotProbability <= 1)) {
+			throw new IllegalArgumentException("invalid hot set: " + hotFraction + " of values with probability " + hotProbability);
+		}
+		final int hot = Math.max(1, (int) (size * hotFraction));
+		if (hot == size) {
+			return uniform(size);
+		}
+		return new TagDistribution(size) {
+			@Override
+			public int sample(final SplittableRandom rand) {
+				return (rand.nextDouble() < hotProbability) ? rand.nextInt(hot) : hot + rand.nextInt(size() - hot);
+			}
+		};
+	}
+
+	/**
+	 * Parses a distribution given on the command line: {@code uniform},
+	 * {@code zipf:exponent} or {@code hot:fraction:probability}.
+	 * @throws IllegalArgumentException if spec is invalid
+	 */
+	public static TagDistribution parse(final String spec, final int size) {
+		final String[] parts = spec.split(":");
+		try {
+			if (parts[0].equals("uniform") && parts.length == 1) {
+				return uniform(size);
+			} else if (parts[0].equals("zipf") && parts.length == 2) {
+				return zipf(size, Double.parseDouble(parts[1]));
+			} else if (parts[0].equals("hot") && parts.length == 3) {
+				return hotSet(size, Double.parseDouble(parts[1]), Double.parseDouble(parts[2]));
+			}
+		} catch (NumberFormatException e) {
+			// reported below
+		}
+		throw new IllegalArgumentException("invalid tag distribution: " + spec);
+	}
+
+	/**
+	 * Arbitrary discrete distribution sampled with Vose's alias method: one
+	 * uniform index and one coin flip per sample.
+	 */
+	private static final class AliasTable extends TagDistribution {
+		private final double[] prob;
+		private final int[] alias;
+
+		AliasTable(final double[] weights) {
+			super(weights.length);
+			final int n = weights.length;
+			prob = new double[n];
+			alias = new int[n];
+
+			double total = 0;
+			for (double w : weights) {
+				total += w;
+			}
+			final double[] scaled = new double[n];
+			// small and large share one array, small from the start and large from the end
+			final int[] work = new int[n];
+			int small = 0;
+			int large = n;
+			for (int i = 0; i < n; i++) {
+				scaled[i] = weights[i] * n / total;
+				if (scaled[i] < 1) {
+					work[small++] = i;
+				} else {
+					work[--large] = i;
+				}
+			}
+			int s = 0;
+			int l = n;
+			while (s < small && l > large) {
+				final int lo = work[s++];
+				final int hi = work[l - 1];
+				prob[lo] = scaled[lo];
+				alias[lo] = hi;
+				scaled[hi] -= 1 - scaled[lo];
+				if (scaled[hi] < 1) {
+					// hi moves from the large to the small list, the slot freed by lo holds it
+					l--;
+					work[--s] = hi;
+				}
+			}
+			// leftovers are 1 up to rounding errors
+			while (s < small) {
+				prob[work[s++]] = 1;
+			}
+			while (l > large) {
+				prob[work[--l]] = 1;
+			}
+		}
+
+		@Override
+		public int sample(final SplittableRandom rand) {
+			final int i = rand.nextInt(prob.length);
+			return (rand.nextDouble() < prob[i]) ? i : alias[i];
+		}
+	}
+}
@@ -0,0 +1,63 @@
+package pbtest.gen;
+
+/**
+ * Shape of the series generated by {@link ParallelGenerator}: the tags of each
+ * point, how their values are distributed, the point rate of each metric and
+ * the kind of values. Every metric has numTagK tags whose values are drawn
+ * from the same distribution, for numMetrics * numTagV^numTagK possible series.
+ */
+public final class Workload {
+
+	/** Kind of the values written by a metric */
+	public enum ValueKind {
+		INT,
+		FLOAT,
+		/** even metrics write ints, odd metrics floats */
+		MIXED
+	}
+
+	private final int numTagK;
+	private final TagDistribution tagValues;
+	private final int[] rates;
+	private final ValueKind valueKind;
+
+	/**
+	 * @param rates points per hour, metric m uses rates[m % rates.length]
+	 */
+	public Workload(final int numTagK, final TagDistribution tagValues, final int[] rates, final ValueKind valueKind) {
+		if (numTagK < 0 || rates.length == 0) {
+			throw new IllegalArgumentException("invalid workload: " + numTagK + " tag keys, " + rates.length + " rates");
+		}
+		for (int rate : rates) {
+			if (rate <= 0) {
+				throw new IllegalArgumentException("invalid rate: " + rate);
+			}
+		}
+		this.numTagK = numTagK;
+		this.tagValues = tagValues;
+		this.rates = rates.clone();
+		this.valueKind = valueKind;
+	}
+
+	public int getNumTagK() {
+		return numTagK;
+	}
+
+	public int getNumTagV() {
+		return tagValues.size();
+	}
+
+	public TagDistribution getTagValues() {
+		return tagValues;
+	}
+
+	/** @return points per hour of the m-th metric, above 3600 its timestamps are in milliseconds */
+	public int pph(final int m) {
+		return rates[m % rates.length];
+	}
+
+	/** @return true if the m-th metric writes fvalues instead of ivalues */
+	public boolean isFloat(final int m) {
+		return valueKind == ValueKind.FLOAT || (valueKind == ValueKind.MIXED && m % 2 == 1);
+	}
+}
@@ -0,0 +1,162 @@
+package pbtest.index;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+
+import pbtest.query.Query;
+import pbtest.store.SeriesStore;
+
+/**
+ * Inverted index from metric ids, tag keys and (tag key, tag value) pairs to
+ * the ids of the series holding them, as Roaring bitmaps. Tag filters become
+ * bitmap intersections and unions, no series needs to be looked at to find
+ * those that match a query.
+ * <p>
+ * Series ids are the dense ids assigned by a {@link SeriesStore}, the index is
+ * either filled while the store is loaded with
+ * {@link #add(int, int, int[], int[], int)} or built afterwards with
+ * {@link #build(SeriesStore)}. Bitmaps returned by the index must not be
+ * modified.
+ */
+public final class TagIndex {
+
+	private static final RoaringBitmap EMPTY = new RoaringBitmap();
+
+	private final HashMap<Integer, RoaringBitmap> metrics = new HashMap<>();
+	private final HashMap<Integer, RoaringBitmap> keys = new HashMap<>();
+	/** key id in the high 32 bits, value id in the low ones */
+	private final HashMap<Long, RoaringBitmap> tags = new HashMap<>();
+
+	/** @return an index of all the series of the store */
+	public static TagIndex build(final SeriesStore store) {
+		final TagIndex index = new TagIndex();
+		int[] tagKeys = new int[8];
+		int[] tagValues = new int[8];
+		for (int series = 0; series < store.seriesCount(); series++) {
+			final int tagCount = store.getTagCount(series);
+			if (tagCount > tagKeys.length) {
+				tagKeys = new int[tagCount];
+				tagValues = new int[tagCount];
+			}
+			for (int t = 0; t < tagCount; t++) {
+				tagKeys[t] = store.getTagKeyId(series, t);
+				tagValues[t] = store.getTagValueId(series, t);
+			}
+			index.add(series, store.getMetricId(series), tagKeys, tagValues, tagCount);
+		}
+		index.runOptimize();
+		return index;
+	}
+
+	/** Indexes a series, series must be added in increasing id order */
+	public void add(final int series, final int metricId, final int[] tagKeys, final int[] tagValues, final int tagCount) {
+		bitmap(metrics, metricId).add(series);
+		for (int t = 0; t < tagCount; t++) {
+			bitmap(keys, tagKeys[t]).add(series);
+			bitmap(tags, tag(tagKeys[t], tagValues[t])).add(series);
+		}
+	}
+
+	/** Converts the bitmaps to run containers where it makes them smaller */
+	public void runOptimize() {
+		for (RoaringBitmap bitmap : metrics.values()) {
+			bitmap.runOptimize();
+		}
+		for (RoaringBitmap bitmap : keys.values()) {
+			bitmap.runOptimize();
+		}
+		for (RoaringBitmap bitmap : tags.values()) {
+			bitmap.runOptimize();
+		}
+	}
+
+	/** @return series of the metric */
+	public RoaringBitmap getMetric(final int metricId) {
+		return get(metrics, metricId);
+	}
+
+	/** @return series with the tag key, whatever its value */
+	public RoaringBitmap getKey(final int keyId) {
+		return get(keys, keyId);
+	}
+
+	/** @return series with the tag */
+	public RoaringBitmap getTag(final int keyId, final int valueId) {
+		return get(tags, tag(keyId, valueId));
+	}
+
+	/**
+	 * Finds the series matching the metric and tag filters of the query: the
+	 * intersection of the metric's bitmap and, for every filtered key, the union
+	 * of the bitmaps of its values.
+	 * @return a new bitmap
+	 */
+	public RoaringBitmap select(final Query query) {
+		RoaringBitmap result = getMetric(query.getMetricId()).clone();
+		final int filterCount = query.getFilterCount();
+		final List<RoaringBitmap> values = new ArrayList<>();
+		for (int f = 0; f < filterCount && !result.isEmpty(); f++) {
+			final int keyId = query.getFilterKeyId(f);
+			if (!query.isFirstFilterOfKey(f)) {
+				continue;
+			}
+			values.clear();
+			boolean anyValue = false;
+			for (int g = f; g < filterCount; g++) {
+				if (query.getFilterKeyId(g) == keyId) {
+					if (query.getFilterValueId(g) == Query.ANY_VALUE) {
+						anyValue = true;
+					} else {
+						values.add(getTag(keyId, query.getFilterValueId(g)));
+					}
+				}
+			}
+			final RoaringBitmap filter = anyValue ? getKey(keyId)
+					: (values.size() == 1) ? values.get(0) : FastAggregation.or(values.iterator());
+			result.and(filter);
+		}
+		return result;
+	}
+
+	/** @return bytes used by the bitmaps */
+	public long getSizeInBytes() {
+		long size = 0;
+		for (RoaringBitmap bitmap : metrics.values()) {
+			size += bitmap.getLongSizeInBytes();
+		}
+		for (RoaringBitmap bitmap : keys.values()) {
+			size += bitmap.getLongSizeInBytes();
+		}
+		for (RoaringBitmap bitmap : tags.values()) {
+			size += bitmap.getLongSizeInBytes();
+		}
+		return size;
+	}
+
+	/** @return number of distinct (tag key, tag value) pairs */
+	public int getTagCount() {
+		return tags.size();
+	}
+
+	private static long tag(final int keyId, final int valueId) {
+		return ((long) keyId << 32) | (valueId & 0xffffffffL);
+	}
+
+	private static <K> RoaringBitmap bitmap(final HashMap<K, RoaringBitmap> map, final K key) {
+		RoaringBitmap bitmap = map.get(key);
+		if (bitmap == null) {
+			bitmap = new RoaringBitmap();
+			map.put(key, bitmap);
+		}
+		return bitmap;
+	}
+
+	private static <K> RoaringBitmap get(final HashMap<K, RoaringBitmap> map, final K key) {
+		final RoaringBitmap bitmap = map.get(key);
+		return (bitmap != null) ? bitmap : EMPTY;
+	}
+}
@@ -0,0 +1,12 @@
+package pbtest.io;
+
+import java.io.IOException;
+
+/**
+ * Callback invoked for every block of decoded data points. The block is only
+ * valid for the duration of the call.
+ */
+public interface BlockHandler {
+
+	void handle(ColumnBlock block) throws IOException;
+}
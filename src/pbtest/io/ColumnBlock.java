@@ -0,0 +1,177 @@
+package pbtest.io;
+
+import java.util.Arrays;
+
+/**
+ * A block of data points stored as primitive columns. Instances are meant to
+ * be reused, the arrays grow as needed and only their first {@link #size()}
+ * (or {@link #tagSize()} for the tag columns) entries are valid.
+ * <p>
+ * The tags of row i are stored in tagKeys/tagValues at
+ * [tagOffset(i), tagOffset(i) + tagCounts[i]).
+ */
+public final class ColumnBlock {
+
+	/** Set in flags when the row has an ivalue */
+	public static final byte HAS_IVALUE = 1;
+	/** Set in flags when the row has an fvalue */
+	public static final byte HAS_FVALUE = 2;
+
+	private int size;
+	private int tagSize;
+
+	private int[] metricIds;
+	private long[] timestamps;
+	private byte[] flags;
+	private int[] ivalues;
+	private float[] fvalues;
+	private int[] tagCounts;
+	private int[] tagOffsets;
+	private int[] tagKeys;
+	private int[] tagValues;
+
+	public ColumnBlock() {
+		this(1024);
+	}
+
+	public ColumnBlock(final int capacity) {
+		metricIds = new int[capacity];
+		timestamps = new long[capacity];
+		flags = new byte[capacity];
+		ivalues = new int[capacity];
+		fvalues = new float[capacity];
+		tagCounts = new int[capacity];
+		tagOffsets = new int[capacity];
+		tagKeys = new int[capacity];
+		tagValues = new int[capacity];
+	}
+
+	public void clear() {
+		size = 0;
+		tagSize = 0;
+	}
+
+	/** Appends the data point currently decoded by the cursor */
+	public void add(final DataPointCursor dp) {
+		addRow(dp.getMetricId(), dp.getTimestamp(), dp.hasIvalue(), dp.getIvalue(), dp.hasFvalue(), dp.getFvalue());
+		for (int t = 0; t < dp.getTagCount(); t++) {
+			addTag(dp.getTagKeyId(t), dp.getTagValueId(t));
+		}
+	}
+
+	/**
+	 * Appends a row without tags, use {@link #addTag(int, int)} to add them.
+	 */
+	public void addRow(final int metricId, final long timestamp, final boolean hasIvalue, final int ivalue,
+			final boolean hasFvalue, final float fvalue) {
+		if (size == timestamps.length) {
+			grow(Math.max(16, size * 2));
+		}
+		final int row = size++;
+		metricIds[row] = metricId;
+		timestamps[row] = timestamp;
+		flags[row] = (byte) ((hasIvalue ? HAS_IVALUE : 0) | (hasFvalue ? HAS_FVALUE : 0));
+		ivalues[row] = ivalue;
+		fvalues[row] = fvalue;
+		tagCounts[row] = 0;
+		tagOffsets[row] = tagSize;
+	}
+
+	/** Adds a tag to the last row */
+	public void addTag(final int keyId, final int valueId) {
+		if (tagSize == tagKeys.length) {
+			tagKeys = Arrays.copyOf(tagKeys, Math.max(16, tagSize * 2));
+			tagValues = Arrays.copyOf(tagValues, Math.max(16, tagSize * 2));
+		}
+		tagKeys[tagSize] = keyId;
+		tagValues[tagSize] = valueId;
+		tagSize++;
+		tagCounts[size - 1]++;
+	}
+
+	/**
+	 * Resizes the block to hold exactly size rows and tagSize tags, the content
+	 * of the columns is left undefined. Used by readers before filling the
+	 * columns, {@link #computeTagOffsets()} must be called once tagCounts is set.
+	 */
+	void resize(final int size, final int tagSize) {
+		if (size > timestamps.length) {
+			grow(size);
+		}
+		if (tagSize > tagKeys.length) {
+			tagKeys = new int[tagSize];
+			tagValues = new int[tagSize];
+		}
+		this.size = size;
+		this.tagSize = tagSize;
+	}
+
+	/** @return sum of the tag counts, should be equal to {@link #tagSize()} */
+	long computeTagOffsets() {
+		long offset = 0;
+		for (int i = 0; i < size; i++) {
+			tagOffsets[i] = (int) offset;
+			offset += tagCounts[i];
+		}
+		return offset;
+	}
+
+	private void grow(final int capacity) {
+		metricIds = Arrays.copyOf(metricIds, capacity);
+		timestamps = Arrays.copyOf(timestamps, capacity);
+		flags = Arrays.copyOf(flags, capacity);
+		ivalues = Arrays.copyOf(ivalues, capacity);
+		fvalues = Arrays.copyOf(fvalues, capacity);
+		tagCounts = Arrays.copyOf(tagCounts, capacity);
+		tagOffsets = Arrays.copyOf(tagOffsets, capacity);
+	}
+
+	/** @return number of rows */
+	public int size() {
+		return size;
+	}
+
+	/** @return number of tags, over all rows */
+	public int tagSize() {
+		return tagSize;
+	}
+
+	public int[] metricIds() {
+		return metricIds;
+	}
+
+	public long[] timestamps() {
+		return timestamps;
+	}
+
+	/** @return {@link #HAS_IVALUE} and {@link #HAS_FVALUE} flags of each row */
+	public byte[] flags() {
+		return flags;
+	}
+
+	/** @return ivalue of each row, 0 if the row has no ivalue */
+	public int[] ivalues() {
+		return ivalues;
+	}
+
+	/** @return fvalue of each row, 0 if the row has no fvalue */
+	public float[] fvalues() {
+		return fvalues;
+	}
+
+	public int[] tagCounts() {
+		return tagCounts;
+	}
+
+	public int tagOffset(final int row) {
+		return tagOffsets[row];
+	}
+
+	public int[] tagKeys() {
+		return tagKeys;
+	}
+
+	public int[] tagValues() {
+		return tagValues;
+	}
+}
@@ -0,0 +1,57 @@
+package pbtest.io;
+
+/**
+ * Constants of the columnar .pbc file format.
+ * <p>
+ * A file starts with {@link #MAGIC}, the format {@link #VERSION} and the
+ * {@code Header} message prefixed by its size as an int. It is followed by
+ * blocks of up to blockSize data points, each laid out as:
+ * <pre>
+ * int   byte length of the rest of the block
+ * int   number of rows
+ * int   number of tags, over all rows
+ * long  smallest timestamp
+ * long  largest timestamp
+ * byte  column encoding, {@link #ENCODING_PLAIN} or {@link #ENCODING_GORILLA}
+ * </pre>
+ * With {@link #ENCODING_PLAIN} the columns follow as:
+ * <pre>
+ * int[] metric_id column
+ * long[] timestamp column
+ * byte[] flags column, see {@link ColumnBlock#flags()}
+ * int[] ivalue column
+ * float[] fvalue column
+ * int[] tag count column
+ * int[] tag key_id column
+ * int[] tag value_id column
+ * </pre>
+ * All values are big-endian. With {@link #ENCODING_GORILLA} the same columns
+ * are stored, in the same order, as a single bit stream written with
+ * {@link pbtest.codec.GorillaCodec}.
+ * <p>
+ * Version 1 files have no encoding byte, all their blocks are plain.
+ */
+public final class ColumnarFormat {
+
+	/** "PBTC" */
+	public static final int MAGIC = 0x50425443;
+
+	public static final int VERSION = 2;
+
+	public static final byte ENCODING_PLAIN = 0;
+	public static final byte ENCODING_GORILLA = 1;
+
+	public static final int DEFAULT_BLOCK_SIZE = 65536;
+
+	/** Size of the fixed part of a block, following its length */
+	static final int BLOCK_HEADER_SIZE = 4 + 4 + 8 + 8 + 1;
+	static final int BLOCK_HEADER_SIZE_V1 = 4 + 4 + 8 + 8;
+
+	private ColumnarFormat() {
+	}
+
+	/** @return size of the plain encoded columns of a block */
+	static int plainColumnsSize(final int rows, final int tags) {
+		return rows * (4 + 8 + 1 + 4 + 4 + 4) + tags * (4 + 4);
+	}
+}
@@ -0,0 +1,124 @@
+package pbtest.io;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import pbtest.DataPointProtos.Header;
+import pbtest.codec.BitInput;
+import pbtest.codec.GorillaCodec;
+
+/**
+ * Reads files written by {@link ColumnarWriter} one {@link ColumnBlock} at a
+ * time.
+ */
+public final class ColumnarReader implements Closeable {
+
+	private final DataInputStream in;
+	private final Header header;
+	private final int version;
+	private ByteBuffer buf = ByteBuffer.allocate(0);
+	private final BitInput bits = new BitInput();
+
+	public ColumnarReader(final InputStream in) throws IOException {
+		this.in = new DataInputStream(in);
+
+		if (this.in.readInt() != ColumnarFormat.MAGIC) {
+			throw new IOException("not a columnar file");
+		}
+		this.version = this.in.readInt();
+		if (version < 1 || version > ColumnarFormat.VERSION) {
+			throw new IOException("unsupported columnar format version: " + version);
+		}
+		final byte[] bytes = new byte[this.in.readInt()];
+		this.in.readFully(bytes);
+		this.header = Header.PARSER.parseFrom(bytes);
+	}
+
+	public Header getHeader() {
+		return header;
+	}
+
+	/**
+	 * Reads the next block into the given one, replacing its content.
+	 * @return false if the end of the file was reached
+	 */
+	public boolean next(final ColumnBlock block) throws IOException {
+		final int size;
+		try {
+			size = in.readInt();
+		} catch (EOFException e) {
+			return false;
+		}
+		final int headerSize = (version == 1) ? ColumnarFormat.BLOCK_HEADER_SIZE_V1 : ColumnarFormat.BLOCK_HEADER_SIZE;
+		if (size < headerSize) {
+			throw new IOException("invalid block size: " + size);
+		}
+		if (buf.capacity() < size) {
+			buf = ByteBuffer.allocate(size);
+		}
+		buf.clear();
+		in.readFully(buf.array(), 0, size);
+		buf.limit(size);
+
+		final int rows = buf.getInt();
+		final int tags = buf.getInt();
+		buf.getLong(); // min timestamp
+		buf.getLong(); // max timestamp
+		final byte encoding = (version == 1) ? ColumnarFormat.ENCODING_PLAIN : buf.get();
+		if (rows < 0 || tags < 0) {
+			throw new IOException("corrupt block: " + rows + " rows, " + tags + " tags");
+		}
+
+		block.resize(rows, tags);
+		if (encoding == ColumnarFormat.ENCODING_GORILLA) {
+			bits.wrap(buf.array(), headerSize, size - headerSize);
+			GorillaCodec.decodeInts(bits, block.metricIds(), rows);
+			GorillaCodec.decodeTimestamps(bits, block.timestamps(), rows);
+			GorillaCodec.decodeBytes(bits, block.flags(), rows);
+			GorillaCodec.decodeInts(bits, block.ivalues(), rows);
+			GorillaCodec.decodeFloats(bits, block.fvalues(), rows);
+			GorillaCodec.decodeInts(bits, block.tagCounts(), rows);
+			GorillaCodec.decodeInts(bits, block.tagKeys(), tags);
+			GorillaCodec.decodeInts(bits, block.tagValues(), tags);
+		} else if (encoding == ColumnarFormat.ENCODING_PLAIN) {
+			if (headerSize + ColumnarFormat.plainColumnsSize(rows, tags) != size) {
+				throw new IOException("corrupt block: " + rows + " rows, " + tags + " tags in " + size + " bytes");
+			}
+			getPlainColumns(block, rows, tags);
+		} else {
+			throw new IOException("unknown block encoding: " + encoding);
+		}
+
+		if (block.computeTagOffsets() != tags) {
+			throw new IOException("corrupt block: tag counts don't add up to " + tags);
+		}
+
+		return true;
+	}
+
+	private void getPlainColumns(final ColumnBlock block, final int rows, final int tags) {
+		buf.asIntBuffer().get(block.metricIds(), 0, rows);
+		buf.position(buf.position() + rows * 4);
+		buf.asLongBuffer().get(block.timestamps(), 0, rows);
+		buf.position(buf.position() + rows * 8);
+		buf.get(block.flags(), 0, rows);
+		buf.asIntBuffer().get(block.ivalues(), 0, rows);
+		buf.position(buf.position() + rows * 4);
+		buf.asFloatBuffer().get(block.fvalues(), 0, rows);
+		buf.position(buf.position() + rows * 4);
+		buf.asIntBuffer().get(block.tagCounts(), 0, rows);
+		buf.position(buf.position() + rows * 4);
+		buf.asIntBuffer().get(block.tagKeys(), 0, tags);
+		buf.position(buf.position() + tags * 4);
+		buf.asIntBuffer().get(block.tagValues(), 0, tags);
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
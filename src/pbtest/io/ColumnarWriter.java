@@ -0,0 +1,160 @@
+package pbtest.io;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import pbtest.DataPointProtos.Header;
+import pbtest.codec.BitOutput;
+import pbtest.codec.GorillaCodec;
+
+/**
+ * Writes data points to the columnar format described in {@link ColumnarFormat}.
+ * Points are buffered into a {@link ColumnBlock} and written out once the
+ * block is full.
+ */
+public final class ColumnarWriter implements Closeable {
+
+	private final DataOutputStream out;
+	private final int blockSize;
+	private final byte encoding;
+	private final ColumnBlock block;
+	private ByteBuffer buf = ByteBuffer.allocate(0);
+	private BitOutput bits;
+
+	public ColumnarWriter(final OutputStream out, final Header header) throws IOException {
+		this(out, header, ColumnarFormat.DEFAULT_BLOCK_SIZE);
+	}
+
+	public ColumnarWriter(final OutputStream out, final Header header, final int blockSize) throws IOException {
+		this(out, header, blockSize, ColumnarFormat.ENCODING_PLAIN);
+	}
+
+	/**
+	 * @param encoding {@link ColumnarFormat#ENCODING_PLAIN} or {@link ColumnarFormat#ENCODING_GORILLA}
+	 */
+	public ColumnarWriter(final OutputStream out, final Header header, final int blockSize, final byte encoding) throws IOException {
+		if (blockSize <= 0) {
+			throw new IllegalArgumentException("invalid block size: " + blockSize);
+		}
+		if (encoding != ColumnarFormat.ENCODING_PLAIN && encoding != ColumnarFormat.ENCODING_GORILLA) {
+			throw new IllegalArgumentException("unknown encoding: " + encoding);
+		}
+		this.out = new DataOutputStream(out);
+		this.blockSize = blockSize;
+		this.encoding = encoding;
+		this.block = new ColumnBlock(blockSize);
+
+		this.out.writeInt(ColumnarFormat.MAGIC);
+		this.out.writeInt(ColumnarFormat.VERSION);
+		this.out.writeInt(header.getSerializedSize());
+		header.writeTo(this.out);
+	}
+
+	/** Appends the data point currently decoded by the cursor */
+	public void add(final DataPointCursor dp) throws IOException {
+		block.add(dp);
+		if (block.size() == blockSize) {
+			flush();
+		}
+	}
+
+	/**
+	 * Appends a data point.
+	 * @param tagCount number of tags to read from keyIds and valueIds
+	 */
+	public void add(final int metricId, final long timestamp, final boolean hasIvalue, final int ivalue,
+			final boolean hasFvalue, final float fvalue, final int[] keyIds, final int[] valueIds, final int tagCount) throws IOException {
+		block.addRow(metricId, timestamp, hasIvalue, ivalue, hasFvalue, fvalue);
+		for (int t = 0; t < tagCount; t++) {
+			block.addTag(keyIds[t], valueIds[t]);
+		}
+		if (block.size() == blockSize) {
+			flush();
+		}
+	}
+
+	/** Writes the pending points, if any, as a block */
+	public void flush() throws IOException {
+		final int rows = block.size();
+		if (rows == 0) {
+			return;
+		}
+		final int tags = block.tagSize();
+
+		final long[] timestamps = block.timestamps();
+		long minTimestamp = Long.MAX_VALUE;
+		long maxTimestamp = Long.MIN_VALUE;
+		for (int i = 0; i < rows; i++) {
+			minTimestamp = Math.min(minTimestamp, timestamps[i]);
+			maxTimestamp = Math.max(maxTimestamp, timestamps[i]);
+		}
+
+		final int size;
+		if (encoding == ColumnarFormat.ENCODING_GORILLA) {
+			if (bits == null) {
+				bits = new BitOutput();
+			}
+			bits.reset();
+			GorillaCodec.encodeInts(block.metricIds(), rows, bits);
+			GorillaCodec.encodeTimestamps(timestamps, rows, bits);
+			GorillaCodec.encodeBytes(block.flags(), rows, bits);
+			GorillaCodec.encodeInts(block.ivalues(), rows, bits);
+			GorillaCodec.encodeFloats(block.fvalues(), rows, bits);
+			GorillaCodec.encodeInts(block.tagCounts(), rows, bits);
+			GorillaCodec.encodeInts(block.tagKeys(), tags, bits);
+			GorillaCodec.encodeInts(block.tagValues(), tags, bits);
+			bits.flush();
+			size = ColumnarFormat.BLOCK_HEADER_SIZE + bits.size();
+		} else {
+			size = ColumnarFormat.BLOCK_HEADER_SIZE + ColumnarFormat.plainColumnsSize(rows, tags);
+		}
+
+		if (buf.capacity() < size) {
+			buf = ByteBuffer.allocate(size);
+		}
+		buf.clear();
+
+		buf.putInt(rows);
+		buf.putInt(tags);
+		buf.putLong(minTimestamp);
+		buf.putLong(maxTimestamp);
+		buf.put(encoding);
+
+		if (encoding == ColumnarFormat.ENCODING_GORILLA) {
+			buf.put(bits.array(), 0, bits.size());
+		} else {
+			putPlainColumns(rows, tags);
+		}
+
+		out.writeInt(size);
+		out.write(buf.array(), 0, size);
+		block.clear();
+	}
+
+	private void putPlainColumns(final int rows, final int tags) {
+		buf.asIntBuffer().put(block.metricIds(), 0, rows);
+		buf.position(buf.position() + rows * 4);
+		buf.asLongBuffer().put(block.timestamps(), 0, rows);
+		buf.position(buf.position() + rows * 8);
+		buf.put(block.flags(), 0, rows);
+		buf.asIntBuffer().put(block.ivalues(), 0, rows);
+		buf.position(buf.position() + rows * 4);
+		buf.asFloatBuffer().put(block.fvalues(), 0, rows);
+		buf.position(buf.position() + rows * 4);
+		buf.asIntBuffer().put(block.tagCounts(), 0, rows);
+		buf.position(buf.position() + rows * 4);
+		buf.asIntBuffer().put(block.tagKeys(), 0, tags);
+		buf.position(buf.position() + tags * 4);
+		buf.asIntBuffer().put(block.tagValues(), 0, tags);
+		buf.position(buf.position() + tags * 4);
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		out.close();
+	}
+}
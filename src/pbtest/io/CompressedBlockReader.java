@@ -0,0 +1,239 @@
+package pbtest.io;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import pbtest.DataPointProtos.Header;
+import pbtest.codec.Compression;
+
+/**
+ * Reads containers written by {@link CompressedBlockWriter}. Record ranges are
+ * expressed as block offsets, each call decompresses the blocks it needs into
+ * its own buffers so that separate ranges can be read concurrently.
+ */
+public final class CompressedBlockReader implements RecordSource, Closeable {
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long size;
+	private final Compression compression;
+	private final Header header;
+	private final long dataOffset;
+
+	public CompressedBlockReader(final String path) throws IOException {
+		this.file = new RandomAccessFile(path, "r");
+		try {
+			this.channel = file.getChannel();
+			this.size = channel.size();
+
+			final byte[] start = new byte[CompressedBlockWriter.MAGIC.length + 1];
+			file.readFully(start);
+			if (!isCompressed(start)) {
+				throw new IOException("not a block compressed file: " + path);
+			}
+			this.compression = Compression.fromId(start[CompressedBlockWriter.MAGIC.length]);
+
+			final ByteBuffer buf = ByteBuffer.allocate((int) Math.min(size - start.length, Framing.MAX_PREFIX_SIZE));
+			readFully(buf, start.length);
+			final int headerSize = Framing.VARINT.readSize(buf, 0, buf.limit());
+			if (headerSize < 0) {
+				throw new IOException("file too small to contain a header");
+			}
+			final int prefixSize = Framing.VARINT.prefixSize(headerSize);
+			final ByteBuffer headerBuf = ByteBuffer.allocate(headerSize);
+			readFully(headerBuf, start.length + prefixSize);
+			this.header = Header.PARSER.parseFrom(headerBuf.array());
+			this.dataOffset = start.length + prefixSize + headerSize;
+		} catch (IOException e) {
+			file.close();
+			throw e;
+		}
+	}
+
+	/** @return true if the bytes start with {@link CompressedBlockWriter#MAGIC} */
+	public static boolean isCompressed(final byte[] start) {
+		if (start.length < CompressedBlockWriter.MAGIC.length) {
+			return false;
+		}
+		for (int i = 0; i < CompressedBlockWriter.MAGIC.length; i++) {
+			if (start[i] != CompressedBlockWriter.MAGIC[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** @return true if the file is a block compressed container */
+	public static boolean isCompressed(final String path) throws IOException {
+		try (RandomAccessFile f = new RandomAccessFile(path, "r")) {
+			final byte[] start = new byte[CompressedBlockWriter.MAGIC.length];
+			try {
+				f.readFully(start);
+			} catch (EOFException e) {
+				return false;
+			}
+			return isCompressed(start);
+		}
+	}
+
+	public Header getHeader() {
+		return header;
+	}
+
+	public Compression getCompression() {
+		return compression;
+	}
+
+	@Override
+	public long dataOffset() {
+		return dataOffset;
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	/**
+	 * Groups the blocks into chunks of roughly chunkSize compressed bytes. Only
+	 * the block headers are read.
+	 */
+	@Override
+	public long[] split(final long chunkSize) throws IOException {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("invalid chunk size: " + chunkSize);
+		}
+		long[] boundaries = new long[16];
+		int n = 0;
+		boundaries[n++] = dataOffset;
+
+		final ByteBuffer blockHeader = ByteBuffer.allocate(CompressedBlockWriter.BLOCK_HEADER_SIZE);
+		long chunkStart = dataOffset;
+		long pos = dataOffset;
+		while (pos < size) {
+			pos = nextBlock(blockHeader, pos);
+			if (pos - chunkStart >= chunkSize && pos < size) {
+				chunkStart = pos;
+				if (n == boundaries.length) {
+					boundaries = Arrays.copyOf(boundaries, n * 2);
+				}
+				boundaries[n++] = chunkStart;
+			}
+		}
+
+		if (n == boundaries.length) {
+			boundaries = Arrays.copyOf(boundaries, n + 1);
+		}
+		boundaries[n++] = size;
+		return Arrays.copyOf(boundaries, n);
+	}
+
+	/**
+	 * Passes every record of the blocks in [start, end) to the handler.
+	 * start must be a block boundary.
+	 */
+	@Override
+	public long readRecords(final long start, final long end, final RecordHandler handler) throws IOException {
+		return readRecords(start, end, Long.MIN_VALUE, Long.MAX_VALUE, handler);
+	}
+
+	/**
+	 * Passes every record of the blocks in [start, end) that may hold
+	 * timestamps in [minTimestamp, maxTimestamp) to the handler. Other blocks
+	 * are skipped without being decompressed, records of the blocks read are
+	 * not filtered.
+	 * @return number of records read
+	 */
+	public long readRecords(final long start, final long end, final long minTimestamp, final long maxTimestamp,
+			final RecordHandler handler) throws IOException {
+		final ByteBuffer blockHeader = ByteBuffer.allocate(CompressedBlockWriter.BLOCK_HEADER_SIZE);
+		ByteBuffer compressed = ByteBuffer.allocate(0);
+		byte[] uncompressed = new byte[0];
+		ByteBuffer records = ByteBuffer.wrap(uncompressed);
+
+		long count = 0;
+		long pos = start;
+		while (pos < end) {
+			final long next = nextBlock(blockHeader, pos);
+			final int compressedLength = blockHeader.getInt(0);
+			final int length = blockHeader.getInt(4);
+			final int blockRecords = blockHeader.getInt(8);
+			final long blockMin = blockHeader.getLong(12);
+			final long blockMax = blockHeader.getLong(20);
+
+			if (blockMax >= minTimestamp && blockMin < maxTimestamp) {
+				if (compressed.capacity() < compressedLength) {
+					compressed = ByteBuffer.allocate(compressedLength);
+				}
+				compressed.clear().limit(compressedLength);
+				readFully(compressed, pos + CompressedBlockWriter.BLOCK_HEADER_SIZE);
+
+				if (uncompressed.length < length) {
+					uncompressed = new byte[length];
+					records = ByteBuffer.wrap(uncompressed);
+				}
+				compression.decompress(compressed.array(), compressedLength, uncompressed, length);
+
+				final long n = readBlock(records, length, handler);
+				if (n != blockRecords) {
+					throw new IOException("corrupt block at offset " + pos + ": " + n + " records out of " + blockRecords);
+				}
+				count += n;
+			}
+			pos = next;
+		}
+
+		return count;
+	}
+
+	private static long readBlock(final ByteBuffer buf, final int limit, final RecordHandler handler) throws IOException {
+		long count = 0;
+		int idx = 0;
+		while (idx < limit) {
+			final int dpSize = Framing.VARINT.readSize(buf, idx, limit);
+			if (dpSize < 0 || (long) idx + Framing.VARINT.prefixSize(dpSize) + dpSize > limit) {
+				throw new IOException("truncated record in block");
+			}
+			idx += Framing.VARINT.prefixSize(dpSize);
+			handler.handle(buf, idx, dpSize);
+			idx += dpSize;
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Reads the header of the block at pos into blockHeader.
+	 * @return offset of the following block
+	 */
+	private long nextBlock(final ByteBuffer blockHeader, final long pos) throws IOException {
+		blockHeader.clear();
+		readFully(blockHeader, pos);
+		final int compressedLength = blockHeader.getInt(0);
+		final long next = pos + CompressedBlockWriter.BLOCK_HEADER_SIZE + compressedLength;
+		if (compressedLength < 0 || blockHeader.getInt(4) < 0 || next > size) {
+			throw new IOException("truncated block at offset " + pos);
+		}
+		return next;
+	}
+
+	private void readFully(final ByteBuffer buf, long position) throws IOException {
+		while (buf.hasRemaining()) {
+			final int n = channel.read(buf, position);
+			if (n < 0) {
+				throw new EOFException("unexpected end of file at offset " + position);
+			}
+			position += n;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
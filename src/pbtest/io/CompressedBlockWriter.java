@@ -0,0 +1,136 @@
+package pbtest.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import pbtest.DataPointProtos.Header;
+import pbtest.codec.Compression;
+
+/**
+ * Writes data points to a block compressed container. Records are varint
+ * framed into an uncompressed block, which is compressed and written out once
+ * it holds recordsPerBlock records.
+ * <p>
+ * A container starts with {@link #MAGIC}, the id of the {@link Compression}
+ * codec, and the varint delimited {@code Header}. Each block is laid out as:
+ * <pre>
+ * int   compressed length
+ * int   uncompressed length
+ * int   number of records
+ * long  smallest timestamp
+ * long  largest timestamp
+ * byte[] compressed records
+ * </pre>
+ * Blocks are compressed independently, so they can be decompressed
+ * concurrently, or skipped based on their timestamp range.
+ */
+public final class CompressedBlockWriter implements Closeable {
+
+	/** First bytes of a container, "PBZ" followed by the format version */
+	public static final byte[] MAGIC = { 'P', 'B', 'Z', 1 };
+
+	public static final int BLOCK_HEADER_SIZE = 4 + 4 + 4 + 8 + 8;
+
+	public static final int DEFAULT_RECORDS_PER_BLOCK = 16384;
+
+	private final DataOutputStream out;
+	private final Compression compression;
+	private final int recordsPerBlock;
+
+	private final BlockBuffer block = new BlockBuffer();
+	private final DataPointWriter writer = new DataPointWriter(block, Framing.VARINT);
+	private byte[] compressed = new byte[0];
+
+	private int records;
+	private long minTimestamp;
+	private long maxTimestamp;
+
+	public CompressedBlockWriter(final OutputStream out, final Header header, final Compression compression) throws IOException {
+		this(out, header, compression, DEFAULT_RECORDS_PER_BLOCK);
+	}
+
+	public CompressedBlockWriter(final OutputStream out, final Header header, final Compression compression,
+			final int recordsPerBlock) throws IOException {
+		if (recordsPerBlock <= 0) {
+			throw new IllegalArgumentException("invalid number of records per block: " + recordsPerBlock);
+		}
+		this.out = new DataOutputStream(out);
+		this.compression = compression;
+		this.recordsPerBlock = recordsPerBlock;
+
+		this.out.write(MAGIC);
+		this.out.writeByte(compression.id());
+		header.writeDelimitedTo(this.out);
+	}
+
+	/** Appends a data point with an ivalue */
+	public void write(final int metricId, final long timestamp, final int ivalue,
+			final int[] tagKeyIds, final int[] tagValueIds, final int tagCount) throws IOException {
+		write(metricId, timestamp, false, 0, true, ivalue, tagKeyIds, tagValueIds, tagCount);
+	}
+
+	/**
+	 * Appends a data point.
+	 * @param tagCount number of tags to read from tagKeyIds and tagValueIds
+	 */
+	public void write(final int metricId, final long timestamp, final boolean hasFvalue, final float fvalue,
+			final boolean hasIvalue, final int ivalue, final int[] tagKeyIds, final int[] tagValueIds,
+			final int tagCount) throws IOException {
+		writer.write(metricId, timestamp, hasFvalue, fvalue, hasIvalue, ivalue, tagKeyIds, tagValueIds, tagCount);
+		if (records == 0) {
+			minTimestamp = timestamp;
+			maxTimestamp = timestamp;
+		} else {
+			minTimestamp = Math.min(minTimestamp, timestamp);
+			maxTimestamp = Math.max(maxTimestamp, timestamp);
+		}
+		if (++records == recordsPerBlock) {
+			flush();
+		}
+	}
+
+	/** Compresses and writes the pending records, if any, as a block */
+	public void flush() throws IOException {
+		if (records == 0) {
+			return;
+		}
+		writer.flush();
+
+		final int length = block.size();
+		final int maxLength = compression.maxCompressedLength(length);
+		if (compressed.length < maxLength) {
+			compressed = new byte[maxLength];
+		}
+		final int compressedLength = compression.compress(block.array(), length, compressed);
+
+		out.writeInt(compressedLength);
+		out.writeInt(length);
+		out.writeInt(records);
+		out.writeLong(minTimestamp);
+		out.writeLong(maxTimestamp);
+		out.write(compressed, 0, compressedLength);
+
+		block.reset();
+		records = 0;
+	}
+
+	@Override
+	public void close() throws IOException {
+		flush();
+		out.close();
+	}
+
+	/** Gives access to the buffer of a ByteArrayOutputStream, avoiding a copy */
+	private static final class BlockBuffer extends ByteArrayOutputStream {
+		BlockBuffer() {
+			super(1 << 20);
+		}
+
+		byte[] array() {
+			return buf;
+		}
+	}
+}
@@ -0,0 +1,261 @@
+package pbtest.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Flyweight decoder for serialized {@code DataPoint} messages. The fields are
+ * decoded in place from the underlying bytes into primitive fields of the
+ * cursor, so a single instance can be reused to scan a whole file without
+ * allocating a {@code DataPoint}, its {@code Tag} list or the tags.
+ * <p>
+ * Wire compatible with the {@code DataPoint} message in datapoint.proto,
+ * unknown fields are skipped.
+ */
+public final class DataPointCursor implements RecordHandler {
+
+	private static final int TAG_METRIC_ID = 1 << 3;        // varint
+	private static final int TAG_TIMESTAMP = 2 << 3;        // varint
+	private static final int TAG_FVALUE = (3 << 3) | 5;     // fixed32
+	private static final int TAG_IVALUE = 4 << 3;           // zigzag varint
+	private static final int TAG_TAG = (5 << 3) | 2;        // length delimited
+
+	private static final int TAG_KEY_ID = 1 << 3;
+	private static final int TAG_VALUE_ID = 2 << 3;
+
+	private byte[] array;
+	private ByteBuffer wrapped;
+
+	private ByteBuffer buf;
+	private int pos;
+
+	private int metricId;
+	private long timestamp;
+	private boolean hasFvalue;
+	private float fvalue;
+	private boolean hasIvalue;
+	private int ivalue;
+
+	private int tagCount;
+	private int[] keyIds = new int[4];
+	private int[] valueIds = new int[4];
+
+	/** Decodes the record stored in data[offset, offset+length) */
+	public DataPointCursor wrap(final byte[] data, final int offset, final int length) throws InvalidProtocolBufferException {
+		if (data != array) {
+			array = data;
+			wrapped = ByteBuffer.wrap(data);
+		}
+		return wrap(wrapped, offset, length);
+	}
+
+	/** Decodes the record stored in buf[offset, offset+length), buf's position is left untouched */
+	public DataPointCursor wrap(final ByteBuffer buf, final int offset, final int length) throws InvalidProtocolBufferException {
+		this.buf = buf;
+		this.pos = offset;
+		decode(offset + length);
+		return this;
+	}
+
+	@Override
+	public void handle(ByteBuffer buf, int offset, int length) throws IOException {
+		wrap(buf, offset, length);
+	}
+
+	public int getMetricId() {
+		return metricId;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public boolean hasFvalue() {
+		return hasFvalue;
+	}
+
+	public float getFvalue() {
+		return fvalue;
+	}
+
+	public boolean hasIvalue() {
+		return hasIvalue;
+	}
+
+	public int getIvalue() {
+		return ivalue;
+	}
+
+	public int getTagCount() {
+		return tagCount;
+	}
+
+	public int getTagKeyId(final int index) {
+		return keyIds[index];
+	}
+
+	public int getTagValueId(final int index) {
+		return valueIds[index];
+	}
+
+	private void decode(final int limit) throws InvalidProtocolBufferException {
+		int fields = 0;
+		hasFvalue = false;
+		fvalue = 0;
+		hasIvalue = false;
+		ivalue = 0;
+		tagCount = 0;
+
+		while (pos < limit) {
+			final int tag = readRawVarint32(limit);
+			switch (tag) {
+			case TAG_METRIC_ID:
+				metricId = readRawVarint32(limit);
+				fields |= 1;
+				break;
+			case TAG_TIMESTAMP:
+				timestamp = readRawVarint64(limit);
+				fields |= 2;
+				break;
+			case TAG_FVALUE:
+				fvalue = Float.intBitsToFloat(readRawLittleEndian32(limit));
+				hasFvalue = true;
+				break;
+			case TAG_IVALUE: {
+				final int n = readRawVarint32(limit);
+				ivalue = (n >>> 1) ^ -(n & 1);
+				hasIvalue = true;
+				break;
+			}
+			case TAG_TAG: {
+				final int size = readRawVarint32(limit);
+				if (size < 0 || pos + size > limit) {
+					throw truncated();
+				}
+				readTag(pos + size);
+				break;
+			}
+			default:
+				skipField(tag, limit);
+				break;
+			}
+		}
+
+		if (pos != limit) {
+			throw truncated();
+		}
+		if (fields != 3) {
+			throw new InvalidProtocolBufferException("Message missing required fields: metric_id, timestamp");
+		}
+	}
+
+	private void readTag(final int limit) throws InvalidProtocolBufferException {
+		int fields = 0;
+		int keyId = 0;
+		int valueId = 0;
+
+		while (pos < limit) {
+			final int tag = readRawVarint32(limit);
+			switch (tag) {
+			case TAG_KEY_ID:
+				keyId = readRawVarint32(limit);
+				fields |= 1;
+				break;
+			case TAG_VALUE_ID:
+				valueId = readRawVarint32(limit);
+				fields |= 2;
+				break;
+			default:
+				skipField(tag, limit);
+				break;
+			}
+		}
+
+		if (pos != limit) {
+			throw truncated();
+		}
+		if (fields != 3) {
+			throw new InvalidProtocolBufferException("Message missing required fields: tag.key_id, tag.value_id");
+		}
+
+		if (tagCount == keyIds.length) {
+			keyIds = Arrays.copyOf(keyIds, tagCount * 2);
+			valueIds = Arrays.copyOf(valueIds, tagCount * 2);
+		}
+		keyIds[tagCount] = keyId;
+		valueIds[tagCount] = valueId;
+		tagCount++;
+	}
+
+	private void skipField(final int tag, final int limit) throws InvalidProtocolBufferException {
+		switch (tag & 7) {
+		case 0:
+			readRawVarint64(limit);
+			break;
+		case 1:
+			skip(8, limit);
+			break;
+		case 2:
+			skip(readRawVarint32(limit), limit);
+			break;
+		case 5:
+			skip(4, limit);
+			break;
+		default:
+			throw new InvalidProtocolBufferException("Protocol message tag had invalid wire type.");
+		}
+	}
+
+	private void skip(final int n, final int limit) throws InvalidProtocolBufferException {
+		if (n < 0 || pos + n > limit) {
+			throw truncated();
+		}
+		pos += n;
+	}
+
+	private int readRawLittleEndian32(final int limit) throws InvalidProtocolBufferException {
+		if (pos + 4 > limit) {
+			throw truncated();
+		}
+		final int v = (buf.get(pos) & 0xff)
+				| (buf.get(pos + 1) & 0xff) << 8
+				| (buf.get(pos + 2) & 0xff) << 16
+				| (buf.get(pos + 3) & 0xff) << 24;
+		pos += 4;
+		return v;
+	}
+
+	private int readRawVarint32(final int limit) throws InvalidProtocolBufferException {
+		if (pos < limit) {
+			final byte b = buf.get(pos);
+			if (b >= 0) {
+				pos++;
+				return b;
+			}
+		}
+		// negative int32 are sign extended to 10 bytes, the upper bits are dropped
+		return (int) readRawVarint64(limit);
+	}
+
+	private long readRawVarint64(final int limit) throws InvalidProtocolBufferException {
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (pos >= limit) {
+				throw truncated();
+			}
+			final byte b = buf.get(pos++);
+			result |= (long) (b & 0x7f) << shift;
+			if (b >= 0) {
+				return result;
+			}
+		}
+		throw new InvalidProtocolBufferException("CodedInputStream encountered a malformed varint.");
+	}
+
+	private static InvalidProtocolBufferException truncated() {
+		return new InvalidProtocolBufferException("While parsing a protocol message, the input ended unexpectedly in the middle of a field.");
+	}
+}
@@ -0,0 +1,107 @@
+package pbtest.io;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.WireFormat;
+
+/**
+ * Writes length-prefixed {@code DataPoint} records from primitive arguments,
+ * bypassing the protobuf builders. The varints are encoded straight
+ * into the buffer of a single reused {@link CodedOutputStream}, no object is
+ * allocated per record.
+ * <p>
+ * The output is byte-identical to building the message and calling
+ * {@code writeShort(getSerializedSize())} followed by {@code writeTo} for
+ * {@link Framing#SHORT}, or {@code writeDelimitedTo} for
+ * {@link Framing#VARINT}. As the
+ * writer buffers its output, {@link #flush()} must be called before anything
+ * else is written to the underlying stream.
+ */
+public final class DataPointWriter implements Flushable {
+
+	private final CodedOutputStream out;
+	private final Framing framing;
+
+	public DataPointWriter(final OutputStream out) {
+		this(out, Framing.SHORT);
+	}
+
+	public DataPointWriter(final OutputStream out, final Framing framing) {
+		this(out, framing, 64 * 1024);
+	}
+
+	public DataPointWriter(final OutputStream out, final Framing framing, final int bufferSize) {
+		this.out = CodedOutputStream.newInstance(out, bufferSize);
+		this.framing = framing;
+	}
+
+	/**
+	 * Writes a data point with an ivalue.
+	 * @return number of bytes written, including the length prefix
+	 */
+	public int write(final int metricId, final long timestamp, final int ivalue,
+			final int[] tagKeyIds, final int[] tagValueIds, final int tagCount) throws IOException {
+		return write(metricId, timestamp, false, 0, true, ivalue, tagKeyIds, tagValueIds, tagCount);
+	}
+
+	/**
+	 * Writes a data point.
+	 * @param tagCount number of tags to read from tagKeyIds and tagValueIds
+	 * @return number of bytes written, including the length prefix
+	 */
+	public int write(final int metricId, final long timestamp, final boolean hasFvalue, final float fvalue,
+			final boolean hasIvalue, final int ivalue, final int[] tagKeyIds, final int[] tagValueIds,
+			final int tagCount) throws IOException {
+		int size = CodedOutputStream.computeInt32Size(1, metricId)
+				+ CodedOutputStream.computeInt64Size(2, timestamp);
+		if (hasFvalue) {
+			size += CodedOutputStream.computeFloatSize(3, fvalue);
+		}
+		if (hasIvalue) {
+			size += CodedOutputStream.computeSInt32Size(4, ivalue);
+		}
+		for (int i = 0; i < tagCount; i++) {
+			final int tagSize = tagSize(tagKeyIds[i], tagValueIds[i]);
+			size += 1 + CodedOutputStream.computeRawVarint32Size(tagSize) + tagSize;
+		}
+		if (framing == Framing.SHORT) {
+			if (size > Short.MAX_VALUE) {
+				throw new IllegalArgumentException("record too large for short framing: " + size + " bytes");
+			}
+			// same as DataOutputStream.writeShort
+			out.writeRawByte((byte) (size >>> 8));
+			out.writeRawByte((byte) size);
+		} else {
+			out.writeRawVarint32(size);
+		}
+
+		out.writeInt32(1, metricId);
+		out.writeInt64(2, timestamp);
+		if (hasFvalue) {
+			out.writeFloat(3, fvalue);
+		}
+		if (hasIvalue) {
+			out.writeSInt32(4, ivalue);
+		}
+		for (int i = 0; i < tagCount; i++) {
+			out.writeTag(5, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+			out.writeRawVarint32(tagSize(tagKeyIds[i], tagValueIds[i]));
+			out.writeInt32(1, tagKeyIds[i]);
+			out.writeInt32(2, tagValueIds[i]);
+		}
+
+		return framing.prefixSize(size) + size;
+	}
+
+	private static int tagSize(final int keyId, final int valueId) {
+		return CodedOutputStream.computeInt32Size(1, keyId) + CodedOutputStream.computeInt32Size(2, valueId);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+}
@@ -0,0 +1,80 @@
+package pbtest.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import pbtest.DataPointProtos.Header;
+
+/**
+ * Converts between the row-per-record .pb stream and the columnar format.
+ */
+public final class FormatConverter {
+
+	private FormatConverter() {
+	}
+
+	/**
+	 * Converts a .pb file into a columnar file.
+	 * @param encoding column encoding of the blocks, see {@link ColumnarFormat}
+	 * @return number of data points converted
+	 */
+	public static long toColumnar(final String pbPath, final String columnarPath, final int blockSize, final byte encoding) throws IOException {
+		try (MappedRecordReader reader = new MappedRecordReader(pbPath)) {
+			final Header header = reader.readHeader();
+			try (final ColumnarWriter writer = new ColumnarWriter(
+					new BufferedOutputStream(new FileOutputStream(columnarPath)), header, blockSize, encoding)) {
+				final DataPointCursor cursor = new DataPointCursor();
+				return reader.readRecords(new RecordHandler() {
+					@Override
+					public void handle(ByteBuffer buf, int offset, int length) throws IOException {
+						writer.add(cursor.wrap(buf, offset, length));
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * Converts a columnar file back into a .pb file.
+	 * @param framing framing of the .pb file
+	 * @return number of data points converted
+	 */
+	public static long toRows(final String columnarPath, final String pbPath, final Framing framing) throws IOException {
+		long count = 0;
+		try (ColumnarReader reader = new ColumnarReader(new BufferedInputStream(new FileInputStream(columnarPath)));
+				OutputStream out = new BufferedOutputStream(new FileOutputStream(pbPath))) {
+			framing.writeHeader(out, reader.getHeader());
+
+			final DataPointWriter writer = new DataPointWriter(out, framing);
+			final ColumnBlock block = new ColumnBlock();
+			int[] tagKeyIds = new int[0];
+			int[] tagValueIds = new int[0];
+			while (reader.next(block)) {
+				for (int i = 0; i < block.size(); i++) {
+					final byte flags = block.flags()[i];
+					final int tagOffset = block.tagOffset(i);
+					final int tagCount = block.tagCounts()[i];
+					if (tagKeyIds.length < tagCount) {
+						tagKeyIds = new int[tagCount];
+						tagValueIds = new int[tagCount];
+					}
+					System.arraycopy(block.tagKeys(), tagOffset, tagKeyIds, 0, tagCount);
+					System.arraycopy(block.tagValues(), tagOffset, tagValueIds, 0, tagCount);
+
+					writer.write(block.metricIds()[i], block.timestamps()[i],
+							(flags & ColumnBlock.HAS_FVALUE) != 0, block.fvalues()[i],
+							(flags & ColumnBlock.HAS_IVALUE) != 0, block.ivalues()[i],
+							tagKeyIds, tagValueIds, tagCount);
+					count++;
+				}
+			}
+			writer.flush();
+		}
+		return count;
+	}
+}
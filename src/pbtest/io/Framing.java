@@ -0,0 +1,174 @@
+package pbtest.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+import com.google.protobuf.CodedOutputStream;
+
+import pbtest.DataPointProtos.Header;
+
+/**
+ * How the messages of a .pb file are delimited.
+ * <ul>
+ * <li>{@link #SHORT}: the original layout, the header and every record are
+ * prefixed by their size written with {@code DataOutputStream.writeShort},
+ * which limits them to 32 KB.</li>
+ * <li>{@link #VARINT}: the file starts with {@link #VARINT_MAGIC} and the
+ * header and records are prefixed by their size as a varint, as written by
+ * {@code writeDelimitedTo} and read by {@code parseDelimitedFrom}.</li>
+ * </ul>
+ * The framing of a file is detected from its first bytes, see
+ * {@link #detect(ByteBuffer)}. A short framed file can't start with the magic
+ * as its header would start with an invalid tag.
+ */
+public enum Framing {
+
+	SHORT {
+		@Override
+		public int readSize(final ByteBuffer buf, final int idx, final int limit) throws IOException {
+			if (idx + 2 > limit) {
+				return -1;
+			}
+			final short size = buf.getShort(idx);
+			if (size < 0) {
+				throw new IOException("invalid record size: " + size);
+			}
+			return size;
+		}
+
+		@Override
+		public int prefixSize(final int size) {
+			return 2;
+		}
+
+		@Override
+		public int headerOffset() {
+			return 0;
+		}
+
+		@Override
+		public int writeHeader(final OutputStream out, final Header header) throws IOException {
+			final int size = header.getSerializedSize();
+			if (size > Short.MAX_VALUE) {
+				throw new IllegalArgumentException("header too large for short framing: " + size + " bytes");
+			}
+			out.write(size >>> 8);
+			out.write(size);
+			header.writeTo(out);
+			return 2 + size;
+		}
+
+		@Override
+		public int writeHeader(final OutputStream out, final byte[] header) throws IOException {
+			if (header.length > Short.MAX_VALUE) {
+				throw new IllegalArgumentException("header too large for short framing: " + header.length + " bytes");
+			}
+			out.write(header.length >>> 8);
+			out.write(header.length);
+			out.write(header);
+			return 2 + header.length;
+		}
+	},
+
+	VARINT {
+		@Override
+		public int readSize(final ByteBuffer buf, final int idx, final int limit) throws IOException {
+			int size = 0;
+			for (int i = 0; i < 5; i++) {
+				if (idx + i >= limit) {
+					return -1;
+				}
+				final byte b = buf.get(idx + i);
+				size |= (b & 0x7f) << (7 * i);
+				if (b >= 0) {
+					if (size < 0) {
+						throw new IOException("invalid record size: " + size);
+					}
+					return size;
+				}
+			}
+			throw new IOException("malformed varint record size at " + idx);
+		}
+
+		@Override
+		public int prefixSize(final int size) {
+			return CodedOutputStream.computeRawVarint32Size(size);
+		}
+
+		@Override
+		public int headerOffset() {
+			return VARINT_MAGIC.length;
+		}
+
+		@Override
+		public int writeHeader(final OutputStream out, final Header header) throws IOException {
+			out.write(VARINT_MAGIC);
+			final int size = header.getSerializedSize();
+			header.writeDelimitedTo(out);
+			return VARINT_MAGIC.length + prefixSize(size) + size;
+		}
+
+		@Override
+		public int writeHeader(final OutputStream out, final byte[] header) throws IOException {
+			out.write(VARINT_MAGIC);
+			int size = header.length;
+			while ((size & ~0x7f) != 0) {
+				out.write((size & 0x7f) | 0x80);
+				size >>>= 7;
+			}
+			out.write(size);
+			out.write(header);
+			return VARINT_MAGIC.length + prefixSize(header.length) + header.length;
+		}
+	};
+
+	/** First bytes of a varint framed file, "PBT" followed by the framing version */
+	public static final byte[] VARINT_MAGIC = { 'P', 'B', 'T', 2 };
+
+	/** Largest size prefix, in bytes */
+	public static final int MAX_PREFIX_SIZE = 5;
+
+	/**
+	 * Reads the size prefix of the record starting at idx. The prefix is
+	 * expected to be in its canonical form, as written by protobuf.
+	 * @return size of the record, or -1 if the prefix extends past limit
+	 * @throws IOException if the prefix is invalid
+	 */
+	public abstract int readSize(ByteBuffer buf, int idx, int limit) throws IOException;
+
+	/** @return size of the prefix of a record of the given size */
+	public abstract int prefixSize(int size);
+
+	/** @return offset of the header's size prefix in the file */
+	public abstract int headerOffset();
+
+	/**
+	 * Writes the beginning of a file, up to and including the header.
+	 * @return number of bytes written
+	 */
+	public abstract int writeHeader(OutputStream out, Header header) throws IOException;
+
+	/**
+	 * Same as {@link #writeHeader(OutputStream, Header)} for a header that was
+	 * already serialized.
+	 * @return number of bytes written
+	 */
+	public abstract int writeHeader(OutputStream out, byte[] header) throws IOException;
+
+	/**
+	 * @param buf first bytes of a file, starting at buf's position
+	 * @return the framing used by the file
+	 */
+	public static Framing detect(final ByteBuffer buf) {
+		if (buf.remaining() < VARINT_MAGIC.length) {
+			return SHORT;
+		}
+		for (int i = 0; i < VARINT_MAGIC.length; i++) {
+			if (buf.get(buf.position() + i) != VARINT_MAGIC[i]) {
+				return SHORT;
+			}
+		}
+		return VARINT;
+	}
+}
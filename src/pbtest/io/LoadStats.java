@@ -0,0 +1,191 @@
+package pbtest.io;
+
+import pbtest.stats.StreamingStats;
+
+/**
+ * Counts and simple aggregates collected while loading data points. Each
+ * loading thread fills its own instance, the partial results are then
+ * combined with {@link #merge(LoadStats)}.
+ * <p>
+ * Optionally, the int and float values are also fed to a
+ * {@link StreamingStats} for their distribution. This costs a logarithm per
+ * value, so it is off by default.
+ */
+public final class LoadStats {
+
+	private long count;
+	private long minTimestamp = Long.MAX_VALUE;
+	private long maxTimestamp = Long.MIN_VALUE;
+	private long ivalueCount;
+	private long ivalueSum;
+	private long fvalueCount;
+	private double fvalueSum;
+	/** null unless value statistics were asked for */
+	private final StreamingStats values;
+
+	public LoadStats() {
+		this(false);
+	}
+
+	/** @param valueStats if true the distribution of the values is collected */
+	public LoadStats(final boolean valueStats) {
+		this.values = valueStats ? new StreamingStats() : null;
+	}
+
+	public void add(final DataPointCursor dp) {
+		count++;
+		final long timestamp = dp.getTimestamp();
+		if (timestamp < minTimestamp) {
+			minTimestamp = timestamp;
+		}
+		if (timestamp > maxTimestamp) {
+			maxTimestamp = timestamp;
+		}
+		if (dp.hasIvalue()) {
+			ivalueCount++;
+			ivalueSum += dp.getIvalue();
+			if (values != null) {
+				values.add(dp.getIvalue());
+			}
+		}
+		if (dp.hasFvalue()) {
+			fvalueCount++;
+			fvalueSum += dp.getFvalue();
+			if (values != null) {
+				values.add(dp.getFvalue());
+			}
+		}
+	}
+
+	/** Adds all the rows of the block */
+	public void add(final ColumnBlock block) {
+		final int rows = block.size();
+		final long[] timestamps = block.timestamps();
+		final byte[] flags = block.flags();
+		final int[] ivalues = block.ivalues();
+		final float[] fvalues = block.fvalues();
+
+		count += rows;
+		for (int i = 0; i < rows; i++) {
+			final long timestamp = timestamps[i];
+			if (timestamp < minTimestamp) {
+				minTimestamp = timestamp;
+			}
+			if (timestamp > maxTimestamp) {
+				maxTimestamp = timestamp;
+			}
+			if ((flags[i] & ColumnBlock.HAS_IVALUE) != 0) {
+				ivalueCount++;
+				ivalueSum += ivalues[i];
+				if (values != null) {
+					values.add(ivalues[i]);
+				}
+			}
+			if ((flags[i] & ColumnBlock.HAS_FVALUE) != 0) {
+				fvalueCount++;
+				fvalueSum += fvalues[i];
+				if (values != null) {
+					values.add(fvalues[i]);
+				}
+			}
+		}
+	}
+
+	/** Adds all the rows of the columns */
+	public void add(final PointColumns columns) {
+		count += columns.size();
+		for (int c = 0; c < columns.getChunkCount(); c++) {
+			final int rows = columns.getChunkSize(c);
+			final long[] timestamps = columns.timestamps(c);
+			final byte[] flags = columns.flags(c);
+			long min = minTimestamp;
+			long max = maxTimestamp;
+			for (int i = 0; i < rows; i++) {
+				min = Math.min(min, timestamps[i]);
+				max = Math.max(max, timestamps[i]);
+			}
+			minTimestamp = min;
+			maxTimestamp = max;
+
+			final int[] ivalues = columns.ivalues(c);
+			if (ivalues != null) {
+				for (int i = 0; i < rows; i++) {
+					if ((flags[i] & ColumnBlock.HAS_IVALUE) != 0) {
+						ivalueCount++;
+						ivalueSum += ivalues[i];
+						if (values != null) {
+							values.add(ivalues[i]);
+						}
+					}
+				}
+			}
+			final float[] fvalues = columns.fvalues(c);
+			if (fvalues != null) {
+				for (int i = 0; i < rows; i++) {
+					if ((flags[i] & ColumnBlock.HAS_FVALUE) != 0) {
+						fvalueCount++;
+						fvalueSum += fvalues[i];
+						if (values != null) {
+							values.add(fvalues[i]);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	/** Adds the results of other into this instance */
+	public LoadStats merge(final LoadStats other) {
+		count += other.count;
+		minTimestamp = Math.min(minTimestamp, other.minTimestamp);
+		maxTimestamp = Math.max(maxTimestamp, other.maxTimestamp);
+		ivalueCount += other.ivalueCount;
+		ivalueSum += other.ivalueSum;
+		fvalueCount += other.fvalueCount;
+		fvalueSum += other.fvalueSum;
+		if (values != null && other.values != null) {
+			values.merge(other.values);
+		}
+		return this;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public long getMinTimestamp() {
+		return minTimestamp;
+	}
+
+	public long getMaxTimestamp() {
+		return maxTimestamp;
+	}
+
+	public long getIvalueCount() {
+		return ivalueCount;
+	}
+
+	public long getIvalueSum() {
+		return ivalueSum;
+	}
+
+	public long getFvalueCount() {
+		return fvalueCount;
+	}
+
+	public double getFvalueSum() {
+		return fvalueSum;
+	}
+
+	/** @return distribution of the int and float values, null if it isn't collected */
+	public StreamingStats getValueStats() {
+		return values;
+	}
+
+	@Override
+	public String toString() {
+		final String s = String.format("count=%d, timestamps=[%d, %d], ivalues=%d (sum %d), fvalues=%d (sum %.3f)",
+				count, minTimestamp, maxTimestamp, ivalueCount, ivalueSum, fvalueCount, fvalueSum);
+		return values == null ? s : s + "\nvalues: " + values;
+	}
+}
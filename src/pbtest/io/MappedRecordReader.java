@@ -0,0 +1,220 @@
+package pbtest.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import pbtest.DataPointProtos.Header;
+
+/**
+ * Walks the length-prefixed records of a .pb file directly over memory mapped
+ * segments of the file. Both {@link Framing}s are supported, the framing is
+ * detected when the header is read. Unlike {@code LoadData.ReadAllBytes} the file is never
+ * copied onto the heap, and there is no 2 GB ceiling on its size.
+ * <p>
+ * Each segment is mapped starting at a record boundary, a record that doesn't
+ * fit entirely in the current segment is picked up by the next one.
+ */
+public final class MappedRecordReader implements RecordSource, Closeable {
+
+	/** Largest region mapped at once */
+	public static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long size;
+	private final int segmentSize;
+
+	private long dataOffset = -1;
+	private Framing framing;
+
+	public MappedRecordReader(final String path) throws IOException {
+		this(path, DEFAULT_SEGMENT_SIZE);
+	}
+
+	public MappedRecordReader(final String path, final int segmentSize) throws IOException {
+		if (segmentSize < 1 << 16) {
+			throw new IllegalArgumentException("invalid segment size: " + segmentSize);
+		}
+		this.file = new RandomAccessFile(path, "r");
+		this.channel = file.getChannel();
+		this.size = channel.size();
+		this.segmentSize = segmentSize;
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public long dataOffset() throws IOException {
+		if (dataOffset < 0) {
+			readHeader();
+		}
+		return dataOffset;
+	}
+
+	/** @return framing of the file */
+	public Framing framing() throws IOException {
+		if (framing == null) {
+			readHeader();
+		}
+		return framing;
+	}
+
+	/** Maps the given region of the file, read-only. */
+	public MappedByteBuffer map(final long position, final long length) throws IOException {
+		return channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+	}
+
+	public Header readHeader() throws IOException {
+		final MappedByteBuffer start = map(0, Math.min(size, Framing.VARINT_MAGIC.length + Framing.MAX_PREFIX_SIZE));
+		final Framing framing = Framing.detect(start);
+		final int offset = framing.headerOffset();
+
+		final int headerSize = framing.readSize(start, offset, start.limit());
+		if (headerSize < 0) {
+			throw new IOException("file too small to contain a header");
+		}
+		final int prefixSize = framing.prefixSize(headerSize);
+		if (offset + prefixSize + (long) headerSize > size) {
+			throw new IOException("invalid header size: " + headerSize);
+		}
+
+		final MappedByteBuffer buf = map(offset + prefixSize, headerSize);
+		final byte[] bytes = new byte[headerSize];
+		buf.get(bytes);
+		final Header header = Header.PARSER.parseFrom(bytes);
+
+		this.framing = framing;
+		this.dataOffset = offset + prefixSize + headerSize;
+		return header;
+	}
+
+	/**
+	 * Passes every record following the header to the handler.
+	 * @return number of records read
+	 */
+	public long readRecords(final RecordHandler handler) throws IOException {
+		return readRecords(dataOffset(), size, handler);
+	}
+
+	/**
+	 * Passes every record in [start, end) to the handler. start must be a
+	 * record boundary.
+	 * @return number of records read
+	 * @throws IOException if the last record extends past end
+	 */
+	@Override
+	public long readRecords(final long start, final long end, final RecordHandler handler) throws IOException {
+		final Framing framing = framing();
+		long count = 0;
+		long pos = start;
+
+		while (pos < end) {
+			final MappedByteBuffer buf = map(pos, Math.min(segmentSize, end - pos));
+			final int limit = buf.limit();
+			int idx = 0;
+
+			while (idx < limit) {
+				final int dpSize = framing.readSize(buf, idx, limit);
+				if (dpSize < 0) {
+					break;
+				}
+				final int prefixSize = framing.prefixSize(dpSize);
+				if ((long) idx + prefixSize + dpSize > limit) {
+					if (idx == 0 && pos + prefixSize + dpSize <= end) {
+						// record larger than a segment, map it on its own
+						handler.handle(map(pos, prefixSize + dpSize), prefixSize, dpSize);
+						idx = prefixSize + dpSize;
+						count++;
+					}
+					break;
+				}
+				handler.handle(buf, idx + prefixSize, dpSize);
+				idx += prefixSize + dpSize;
+				count++;
+			}
+
+			if (idx == 0) {
+				throw new IOException("truncated record at offset " + pos);
+			}
+			pos += idx;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Splits the records following the header into chunks of roughly
+	 * chunkSize bytes. Only the length prefixes are read.
+	 * @return the chunk boundaries, chunk i spans [b[i], b[i+1])
+	 */
+	@Override
+	public long[] split(final long chunkSize) throws IOException {
+		return split(dataOffset(), size, chunkSize);
+	}
+
+	/**
+	 * Splits the records in [start, end) into chunks of roughly chunkSize
+	 * bytes, each starting at a record boundary.
+	 * @return the chunk boundaries, chunk i spans [b[i], b[i+1])
+	 */
+	public long[] split(final long start, final long end, final long chunkSize) throws IOException {
+		if (chunkSize <= 0) {
+			throw new IllegalArgumentException("invalid chunk size: " + chunkSize);
+		}
+		final Framing framing = framing();
+		long[] boundaries = new long[16];
+		int n = 0;
+		boundaries[n++] = start;
+
+		long chunkStart = start;
+		long pos = start;
+		while (pos < end) {
+			final MappedByteBuffer buf = map(pos, Math.min(segmentSize, end - pos));
+			final int limit = buf.limit();
+			long next = pos;
+
+			while (next - pos < limit) {
+				final int idx = (int) (next - pos);
+				final int dpSize = framing.readSize(buf, idx, limit);
+				if (dpSize < 0) {
+					break;
+				}
+				// only the prefixes are needed, records may extend past the segment
+				next += framing.prefixSize(dpSize) + dpSize;
+				if (next > end) {
+					throw new IOException("truncated record at offset " + (pos + idx));
+				}
+				if (next - chunkStart >= chunkSize && next < end) {
+					chunkStart = next;
+					if (n == boundaries.length) {
+						boundaries = Arrays.copyOf(boundaries, n * 2);
+					}
+					boundaries[n++] = chunkStart;
+				}
+			}
+
+			if (next == pos) {
+				throw new IOException("truncated record at offset " + pos);
+			}
+			pos = next;
+		}
+
+		if (n == boundaries.length) {
+			boundaries = Arrays.copyOf(boundaries, n + 1);
+		}
+		boundaries[n++] = end;
+		return Arrays.copyOf(boundaries, n);
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+}
@@ -0,0 +1,144 @@
+package pbtest.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import pbtest.metrics.LoadMetrics;
+
+/**
+ * Loads a single file on several cores. The file is split into chunks at
+ * record (or block) boundaries, the chunks are decoded concurrently on a fork/join pool
+ * and the per-chunk {@link LoadStats} are merged.
+ * <p>
+ * With {@link #setMetrics(LoadMetrics)}, the decode time of each chunk is
+ * recorded. Chunks are memory mapped, so that time includes the page faults
+ * that read the file.
+ * <p>
+ * A loader created with a parallelism owns its pool, which {@link #close()}
+ * shuts down. A pool given by the caller is left running.
+ */
+public final class ParallelLoader implements Closeable {
+
+	/** Smallest chunk handed to a single task */
+	public static final long MIN_CHUNK_SIZE = 1 << 20;
+
+	/** Number of chunks per worker, so that the pool can balance the load */
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private final ForkJoinPool pool;
+	private final boolean ownsPool;
+	private final boolean valueStats;
+	private LoadMetrics metrics;
+
+	public ParallelLoader(final ForkJoinPool pool) {
+		this(pool, false);
+	}
+
+	public ParallelLoader(final int parallelism) {
+		this(parallelism, false);
+	}
+
+	/** @param valueStats if true the distribution of the values is collected, see {@link LoadStats#LoadStats(boolean)} */
+	public ParallelLoader(final ForkJoinPool pool, final boolean valueStats) {
+		this(pool, false, valueStats);
+	}
+
+	public ParallelLoader(final int parallelism, final boolean valueStats) {
+		this(new ForkJoinPool(parallelism), true, valueStats);
+	}
+
+	private ParallelLoader(final ForkJoinPool pool, final boolean ownsPool, final boolean valueStats) {
+		this.pool = pool;
+		this.ownsPool = ownsPool;
+		this.valueStats = valueStats;
+	}
+
+	/** @param metrics where decoded chunks are recorded, null to disable */
+	public void setMetrics(final LoadMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public LoadStats load(final RecordSource reader) throws IOException {
+		final long start = reader.dataOffset();
+		final long chunkSize = Math.max(MIN_CHUNK_SIZE,
+				(reader.size() - start) / ((long) pool.getParallelism() * CHUNKS_PER_THREAD));
+		return load(reader, reader.split(chunkSize));
+	}
+
+	/**
+	 * Decodes the given chunks concurrently.
+	 * @param boundaries chunk boundaries as returned by {@link RecordSource#split(long)}
+	 */
+	public LoadStats load(final RecordSource reader, final long[] boundaries) throws IOException {
+		try {
+			return pool.invoke(new LoadTask(reader, boundaries, 0, boundaries.length - 1, valueStats, metrics));
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/** Shuts down the pool if the loader created it */
+	@Override
+	public void close() {
+		if (ownsPool) {
+			pool.shutdown();
+		}
+	}
+
+	private static final class LoadTask extends RecursiveTask<LoadStats> {
+		private static final long serialVersionUID = 1L;
+
+		private final RecordSource reader;
+		private final long[] boundaries;
+		private final int from;
+		private final int to;
+		private final boolean valueStats;
+		private final LoadMetrics metrics;
+
+		LoadTask(final RecordSource reader, final long[] boundaries, final int from, final int to, final boolean valueStats,
+				final LoadMetrics metrics) {
+			this.reader = reader;
+			this.boundaries = boundaries;
+			this.from = from;
+			this.to = to;
+			this.valueStats = valueStats;
+			this.metrics = metrics;
+		}
+
+		@Override
+		protected LoadStats compute() {
+			if (to - from > 1) {
+				final int mid = (from + to) >>> 1;
+				final LoadTask left = new LoadTask(reader, boundaries, from, mid, valueStats, metrics);
+				left.fork();
+				final LoadStats right = new LoadTask(reader, boundaries, mid, to, valueStats, metrics).compute();
+				return left.join().merge(right);
+			}
+
+			final LoadStats stats = new LoadStats(valueStats);
+			if (from == to) {
+				return stats;
+			}
+			final DataPointCursor cursor = new DataPointCursor();
+			final long start = metrics != null ? System.nanoTime() : 0;
+			try {
+				reader.readRecords(boundaries[from], boundaries[to], new RecordHandler() {
+					@Override
+					public void handle(ByteBuffer buf, int offset, int length) throws IOException {
+						stats.add(cursor.wrap(buf, offset, length));
+					}
+				});
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			if (metrics != null) {
+				metrics.recordBatch(System.nanoTime() - start, stats.getCount());
+			}
+			return stats;
+		}
+	}
+}
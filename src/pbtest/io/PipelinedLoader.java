@@ -0,0 +1,377 @@
+package pbtest.io;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import pbtest.DataPointProtos.Header;
+import pbtest.metrics.LoadMetrics;
+
+/**
+ * Loads a .pb stream with I/O, decoding and consumption overlapped on
+ * separate threads:
+ * <ol>
+ * <li>a reader thread fills large chunks from the stream and finds the record
+ * boundaries in them. The incomplete record at the end of a chunk is carried
+ * over to the start of the next one;</li>
+ * <li>decoder threads turn the records of a chunk into a {@link ColumnBlock}.
+ * Chunk i goes to decoder i % decoders;</li>
+ * <li>the calling thread takes the blocks from the decoders in the same round
+ * robin order, so they reach the {@link BlockHandler} in file order.</li>
+ * </ol>
+ * Stages are connected by bounded single-producer single-consumer
+ * {@link SpscRing}s, so the whole pipeline is lock-free. Chunks are recycled
+ * through a ring from the consumer back to the reader, which bounds memory to
+ * a fixed number of chunks.
+ * <p>
+ * With {@link #setMetrics(LoadMetrics)}, the reader records each read from
+ * the stream and the decoders the decode time of each chunk.
+ */
+public final class PipelinedLoader {
+
+	public static final int DEFAULT_CHUNK_SIZE = 1 << 20;
+
+	/** Chunks each decoder can have queued */
+	private static final int RING_CAPACITY = 4;
+
+	/** Pause of a stage that has been waiting for a while */
+	private static final long PARK_NANOS = 50000;
+
+	private final int decoders;
+	private final int chunkSize;
+	private LoadMetrics metrics;
+
+	public PipelinedLoader(final int decoders) {
+		this(decoders, DEFAULT_CHUNK_SIZE);
+	}
+
+	public PipelinedLoader(final int decoders, final int chunkSize) {
+		if (decoders <= 0 || chunkSize < 16) {
+			throw new IllegalArgumentException("invalid pipeline: " + decoders + " decoders, chunks of " + chunkSize + " bytes");
+		}
+		this.decoders = decoders;
+		this.chunkSize = chunkSize;
+	}
+
+	/** @param metrics where reads and decoded chunks are recorded, null to disable */
+	public void setMetrics(final LoadMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public long load(final String path, final BlockHandler handler) throws IOException {
+		try (InputStream in = new FileInputStream(path)) {
+			return load(in, handler);
+		}
+	}
+
+	/**
+	 * Reads the whole stream, passing the decoded blocks to the handler on the
+	 * calling thread.
+	 * @return number of records read
+	 */
+	public long load(final InputStream in, final BlockHandler handler) throws IOException {
+		return new Pipeline(in).run(handler);
+	}
+
+	/** Records of a chunk of the stream, and once decoded the block holding them */
+	private static final class Chunk {
+		byte[] data;
+		/** valid bytes are data[0, limit) */
+		int limit;
+		/** records are data[offsets[i], offsets[i] + lengths[i]) */
+		int[] offsets = new int[1024];
+		int[] lengths = new int[1024];
+		int count;
+		/** start of the first incomplete record, carried over to the next chunk */
+		int carry;
+		/** set on the chunk that marks the end of the stream */
+		boolean last;
+		final ColumnBlock block = new ColumnBlock();
+
+		Chunk(final int size) {
+			data = new byte[size];
+		}
+
+		void addRecord(final int offset, final int length) {
+			if (count == offsets.length) {
+				offsets = Arrays.copyOf(offsets, count * 2);
+				lengths = Arrays.copyOf(lengths, count * 2);
+			}
+			offsets[count] = offset;
+			lengths[count] = length;
+			count++;
+		}
+	}
+
+	/** State of a single load */
+	private final class Pipeline {
+		private final InputStream in;
+		private final SpscRing<Chunk> free;
+		private final SpscRing<Chunk>[] decodeRings;
+		private final SpscRing<Chunk>[] doneRings;
+
+		private volatile Throwable failure;
+		/** set before the threads start, then only used by the reader */
+		private Framing framing;
+		private boolean eof;
+		private long dispatched;
+
+		@SuppressWarnings({"unchecked", "rawtypes"})
+		Pipeline(final InputStream in) {
+			this.in = in;
+			decodeRings = new SpscRing[decoders];
+			doneRings = new SpscRing[decoders];
+			for (int d = 0; d < decoders; d++) {
+				decodeRings[d] = new SpscRing<>(RING_CAPACITY);
+				doneRings[d] = new SpscRing<>(RING_CAPACITY);
+			}
+			// enough chunks to fill every ring, plus the two the reader holds
+			final int chunks = decoders * RING_CAPACITY * 2 + 2;
+			free = new SpscRing<>(chunks);
+			for (int c = 0; c < chunks; c++) {
+				free.offer(new Chunk(chunkSize));
+			}
+		}
+
+		long run(final BlockHandler handler) throws IOException {
+			final Chunk first = free.poll();
+			readHeader(first);
+
+			final Thread[] threads = new Thread[decoders + 1];
+			threads[0] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					read(first);
+				}
+			}, "pipeline-reader");
+			for (int d = 0; d < decoders; d++) {
+				final int decoder = d;
+				threads[d + 1] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						decode(decoder);
+					}
+				}, "pipeline-decoder-" + d);
+			}
+			for (Thread thread : threads) {
+				thread.setDaemon(true);
+				thread.start();
+			}
+
+			long count = 0;
+			try {
+				for (long c = 0;; c++) {
+					final Chunk chunk = take(doneRings[(int) (c % decoders)]);
+					if (chunk.last) {
+						break;
+					}
+					count += chunk.count;
+					handler.handle(chunk.block);
+					put(free, chunk);
+				}
+			} catch (IOException | RuntimeException | Error e) {
+				fail(e);
+				throw e;
+			} finally {
+				for (Thread thread : threads) {
+					try {
+						thread.join();
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						fail(e);
+						break;
+					}
+				}
+			}
+			checkFailure();
+			return count;
+		}
+
+		/** Reads the header at the start of the first chunk, the chunk is left right after it */
+		private void readHeader(final Chunk chunk) throws IOException {
+			fill(chunk, Framing.VARINT_MAGIC.length + Framing.MAX_PREFIX_SIZE);
+			final ByteBuffer buf = ByteBuffer.wrap(chunk.data, 0, chunk.limit);
+			framing = Framing.detect(buf);
+			final int offset = framing.headerOffset();
+			final int headerSize = framing.readSize(buf, offset, chunk.limit);
+			if (headerSize < 0) {
+				throw new IOException("file too small to contain a header");
+			}
+			final int dataOffset = offset + framing.prefixSize(headerSize) + headerSize;
+			fill(chunk, dataOffset);
+			if (chunk.limit < dataOffset) {
+				throw new IOException("invalid header size: " + headerSize);
+			}
+			Header.PARSER.parseFrom(chunk.data, dataOffset - headerSize, headerSize);
+			chunk.carry = dataOffset;
+		}
+
+		/** Reader stage, chunk holds the data that follows the header */
+		private void read(Chunk chunk) {
+			try {
+				int start = chunk.carry;
+				while (true) {
+					fill(chunk, chunk.data.length);
+					frame(chunk, start);
+					if (eof && chunk.carry < chunk.limit) {
+						throw new IOException("truncated record at the end of the stream");
+					}
+
+					// a chunk without records is reused in place, the reader never returns
+					// chunks to the free ring: the consumer is its only producer
+					final Chunk next = chunk.count > 0 ? take(free) : chunk;
+					final byte[] data = chunk.data;
+					final int carried = chunk.limit - chunk.carry;
+					// a record larger than a chunk gets a chunk of its own
+					final int needed = Framing.MAX_PREFIX_SIZE + pendingSize(chunk);
+					if (next.data.length < needed) {
+						next.data = new byte[needed];
+					}
+					System.arraycopy(data, chunk.carry, next.data, 0, carried);
+					next.limit = carried;
+
+					if (chunk.count > 0) {
+						dispatch(chunk);
+					}
+					if (eof) {
+						next.last = true;
+						for (int d = 0; d < decoders; d++) {
+							// the same marker goes through every decoder, only the consumer reads it
+							put(decodeRings[(int) ((dispatched + d) % decoders)], next);
+						}
+						return;
+					}
+					chunk = next;
+					start = 0;
+				}
+			} catch (Throwable t) {
+				fail(t);
+			}
+		}
+
+		private void dispatch(final Chunk chunk) throws IOException {
+			put(decodeRings[(int) (dispatched++ % decoders)], chunk);
+		}
+
+		/** Finds the complete records in chunk.data[start, limit) */
+		private void frame(final Chunk chunk, final int start) throws IOException {
+			final ByteBuffer buf = ByteBuffer.wrap(chunk.data);
+			chunk.count = 0;
+			chunk.last = false;
+			int idx = start;
+			while (idx < chunk.limit) {
+				final int size = framing.readSize(buf, idx, chunk.limit);
+				if (size < 0) {
+					break;
+				}
+				final int prefixSize = framing.prefixSize(size);
+				if ((long) idx + prefixSize + size > chunk.limit) {
+					break;
+				}
+				chunk.addRecord(idx + prefixSize, size);
+				idx += prefixSize + size;
+			}
+			chunk.carry = idx;
+		}
+
+		/** @return size of the incomplete record at the end of chunk, as far as it is known */
+		private int pendingSize(final Chunk chunk) throws IOException {
+			final int size = framing.readSize(ByteBuffer.wrap(chunk.data), chunk.carry, chunk.limit);
+			return Math.max(size, 0);
+		}
+
+		/** Reads from the stream until chunk holds at least n bytes, or the stream ends */
+		private void fill(final Chunk chunk, final int n) throws IOException {
+			if (n > chunk.data.length) {
+				chunk.data = Arrays.copyOf(chunk.data, n);
+			}
+			while (chunk.limit < n && !eof) {
+				final long start = metrics != null ? System.nanoTime() : 0;
+				final int read = in.read(chunk.data, chunk.limit, chunk.data.length - chunk.limit);
+				if (metrics != null) {
+					metrics.recordRead(System.nanoTime() - start, Math.max(read, 0));
+				}
+				if (read < 0) {
+					eof = true;
+				} else {
+					chunk.limit += read;
+				}
+			}
+		}
+
+		/** Decoder stage */
+		private void decode(final int decoder) {
+			final SpscRing<Chunk> input = decodeRings[decoder];
+			final SpscRing<Chunk> output = doneRings[decoder];
+			final DataPointCursor cursor = new DataPointCursor();
+			try {
+				while (true) {
+					final Chunk chunk = take(input);
+					if (!chunk.last) {
+						final long start = metrics != null ? System.nanoTime() : 0;
+						final ColumnBlock block = chunk.block;
+						block.clear();
+						for (int i = 0; i < chunk.count; i++) {
+							block.add(cursor.wrap(chunk.data, chunk.offsets[i], chunk.lengths[i]));
+						}
+						if (metrics != null) {
+							metrics.recordBatch(System.nanoTime() - start, chunk.count);
+						}
+					}
+					put(output, chunk);
+					if (chunk.last) {
+						return;
+					}
+				}
+			} catch (Throwable t) {
+				fail(t);
+			}
+		}
+
+		private <T> void put(final SpscRing<T> ring, final T item) throws IOException {
+			int spins = 0;
+			while (!ring.offer(item)) {
+				backoff(spins++);
+			}
+		}
+
+		private <T> T take(final SpscRing<T> ring) throws IOException {
+			int spins = 0;
+			T item;
+			while ((item = ring.poll()) == null) {
+				backoff(spins++);
+			}
+			return item;
+		}
+
+		/** Spins, then yields, then parks so that idle stages don't burn a core */
+		private void backoff(final int spins) throws IOException {
+			checkFailure();
+			if (spins > 10000) {
+				LockSupport.parkNanos(PARK_NANOS);
+			} else if (spins > 100) {
+				Thread.yield();
+			}
+		}
+
+		private void fail(final Throwable t) {
+			if (failure == null) {
+				failure = t;
+			}
+		}
+
+		private void checkFailure() throws IOException {
+			final Throwable t = failure;
+			if (t == null) {
+				return;
+			}
+			if (t instanceof IOException) {
+				throw new IOException(t.getMessage(), t);
+			}
+			throw new IOException("pipeline failed", t);
+		}
+	}
+}
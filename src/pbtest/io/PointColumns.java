@@ -0,0 +1,159 @@
+package pbtest.io;
+
+import java.util.Arrays;
+
+/**
+ * Data points loaded into primitive columns, for analytics over a whole file.
+ * Unlike {@link ColumnBlock}, which is a reusable buffer, the columns hold
+ * every point added and grow by fixed size chunks of {@link #CHUNK_SIZE} rows,
+ * so growing never copies the points already loaded.
+ * <p>
+ * Row i is at index i &amp; (CHUNK_SIZE - 1) of chunk i / CHUNK_SIZE. The
+ * ivalues (or fvalues) column of a chunk is only allocated once a row of the
+ * chunk has an ivalue (or an fvalue), files with int values cost 21 bytes per
+ * point plus 8 bytes per tag. Aggregations should loop over the chunk arrays,
+ * see {@link LoadStats#add(PointColumns)}.
+ */
+public final class PointColumns {
+
+	public static final int CHUNK_BITS = 16;
+	public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+	private Chunk[] chunks = new Chunk[16];
+	private int numChunks;
+	private long size;
+
+	/** Columns of CHUNK_SIZE rows, the tag columns are sized by the tags of those rows */
+	private static final class Chunk {
+		final long[] timestamps = new long[CHUNK_SIZE];
+		final int[] metricIds = new int[CHUNK_SIZE];
+		final byte[] flags = new byte[CHUNK_SIZE];
+		int[] ivalues;
+		float[] fvalues;
+		/** tags of row r are at [tagEnds[r - 1], tagEnds[r]), the first row starting at 0 */
+		final int[] tagEnds = new int[CHUNK_SIZE];
+		int[] tagKeys = new int[CHUNK_SIZE];
+		int[] tagValues = new int[CHUNK_SIZE];
+		int tagSize;
+		int size;
+	}
+
+	/** Appends the data point currently decoded by the cursor */
+	public void add(final DataPointCursor dp) {
+		final Chunk chunk = lastChunk();
+		final int row = chunk.size;
+		chunk.timestamps[row] = dp.getTimestamp();
+		chunk.metricIds[row] = dp.getMetricId();
+		byte flags = 0;
+		if (dp.hasIvalue()) {
+			if (chunk.ivalues == null) {
+				chunk.ivalues = new int[CHUNK_SIZE];
+			}
+			chunk.ivalues[row] = dp.getIvalue();
+			flags |= ColumnBlock.HAS_IVALUE;
+		}
+		if (dp.hasFvalue()) {
+			if (chunk.fvalues == null) {
+				chunk.fvalues = new float[CHUNK_SIZE];
+			}
+			chunk.fvalues[row] = dp.getFvalue();
+			flags |= ColumnBlock.HAS_FVALUE;
+		}
+		chunk.flags[row] = flags;
+
+		final int tagCount = dp.getTagCount();
+		if (chunk.tagSize + tagCount > chunk.tagKeys.length) {
+			final int capacity = Math.max(chunk.tagKeys.length * 2, chunk.tagSize + tagCount);
+			chunk.tagKeys = Arrays.copyOf(chunk.tagKeys, capacity);
+			chunk.tagValues = Arrays.copyOf(chunk.tagValues, capacity);
+		}
+		for (int t = 0; t < tagCount; t++) {
+			chunk.tagKeys[chunk.tagSize] = dp.getTagKeyId(t);
+			chunk.tagValues[chunk.tagSize] = dp.getTagValueId(t);
+			chunk.tagSize++;
+		}
+		chunk.tagEnds[row] = chunk.tagSize;
+
+		chunk.size++;
+		size++;
+	}
+
+	private Chunk lastChunk() {
+		if (numChunks > 0 && chunks[numChunks - 1].size < CHUNK_SIZE) {
+			return chunks[numChunks - 1];
+		}
+		if (numChunks == chunks.length) {
+			chunks = Arrays.copyOf(chunks, numChunks * 2);
+		}
+		final Chunk chunk = new Chunk();
+		chunks[numChunks++] = chunk;
+		return chunk;
+	}
+
+	/** @return number of rows */
+	public long size() {
+		return size;
+	}
+
+	public int getChunkCount() {
+		return numChunks;
+	}
+
+	/** @return number of rows of the chunk */
+	public int getChunkSize(final int chunk) {
+		return chunks[chunk].size;
+	}
+
+	public long[] timestamps(final int chunk) {
+		return chunks[chunk].timestamps;
+	}
+
+	public int[] metricIds(final int chunk) {
+		return chunks[chunk].metricIds;
+	}
+
+	/** @return {@link ColumnBlock#HAS_IVALUE} and {@link ColumnBlock#HAS_FVALUE} flags of each row */
+	public byte[] flags(final int chunk) {
+		return chunks[chunk].flags;
+	}
+
+	/** @return ivalue of each row, null if no row of the chunk has an ivalue */
+	public int[] ivalues(final int chunk) {
+		return chunks[chunk].ivalues;
+	}
+
+	/** @return fvalue of each row, null if no row of the chunk has an fvalue */
+	public float[] fvalues(final int chunk) {
+		return chunks[chunk].fvalues;
+	}
+
+	/** @return end offset of the tags of each row in the chunk's tag columns */
+	public int[] tagEnds(final int chunk) {
+		return chunks[chunk].tagEnds;
+	}
+
+	public int[] tagKeys(final int chunk) {
+		return chunks[chunk].tagKeys;
+	}
+
+	public int[] tagValues(final int chunk) {
+		return chunks[chunk].tagValues;
+	}
+
+	public long getTimestamp(final long row) {
+		return chunks[(int) (row >>> CHUNK_BITS)].timestamps[(int) row & (CHUNK_SIZE - 1)];
+	}
+
+	/** @return bytes used by the column arrays */
+	public long getSizeInBytes() {
+		long bytes = 0;
+		for (int c = 0; c < numChunks; c++) {
+			final Chunk chunk = chunks[c];
+			bytes += CHUNK_SIZE * (8 + 4 + 1 + 4);
+			bytes += (chunk.ivalues != null) ? 4 * CHUNK_SIZE : 0;
+			bytes += (chunk.fvalues != null) ? 4 * CHUNK_SIZE : 0;
+			bytes += 8L * chunk.tagKeys.length;
+		}
+		return bytes;
+	}
+}
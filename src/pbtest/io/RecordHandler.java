@@ -0,0 +1,18 @@
+package pbtest.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Callback invoked for every serialized record found while walking a file.
+ * The bytes are only valid for the duration of the call.
+ */
+public interface RecordHandler {
+
+	/**
+	 * @param buf buffer holding the record
+	 * @param offset absolute position of the first byte of the record in buf
+	 * @param length serialized size of the record
+	 */
+	void handle(ByteBuffer buf, int offset, int length) throws IOException;
+}
@@ -0,0 +1,30 @@
+package pbtest.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A file whose records can be read by ranges of byte offsets, so that
+ * separate ranges can be decoded concurrently.
+ */
+public interface RecordSource extends Closeable {
+
+	/**
+	 * Splits the records into chunks of roughly chunkSize bytes, each starting
+	 * at a boundary that {@link #readRecords(long, long, RecordHandler)} accepts.
+	 * @return the chunk boundaries, chunk i spans [b[i], b[i+1])
+	 */
+	long[] split(long chunkSize) throws IOException;
+
+	/**
+	 * Passes every record in [start, end) to the handler.
+	 * @return number of records read
+	 */
+	long readRecords(long start, long end, RecordHandler handler) throws IOException;
+
+	/** @return offset of the first record */
+	long dataOffset() throws IOException;
+
+	/** @return size of the file in bytes */
+	long size();
+}
@@ -0,0 +1,77 @@
+package pbtest.io;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded lock-free queue for exactly one producer thread and one consumer
+ * thread. The producer only writes tail and the consumer only writes head,
+ * each side caches the other's index so that it only reads the shared counter
+ * when the ring looks full (or empty).
+ */
+final class SpscRing<T> {
+
+	private final Object[] items;
+	private final int mask;
+
+	/** index of the next item to poll, written by the consumer */
+	private final AtomicLong head = new AtomicLong();
+	/** index of the next item to offer, written by the producer */
+	private final AtomicLong tail = new AtomicLong();
+
+	/** producer's view of head */
+	private long cachedHead;
+	/** consumer's view of tail */
+	private long cachedTail;
+
+	/** @param capacity rounded up to a power of two */
+	SpscRing(final int capacity) {
+		if (capacity <= 0 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("invalid ring capacity: " + capacity);
+		}
+		final int size = Integer.highestOneBit(capacity - 1) << 1;
+		this.items = new Object[Math.max(1, size)];
+		this.mask = items.length - 1;
+	}
+
+	int capacity() {
+		return items.length;
+	}
+
+	/**
+	 * Producer side.
+	 * @return false if the ring is full
+	 */
+	boolean offer(final T item) {
+		final long t = tail.get();
+		if (t - cachedHead == items.length) {
+			cachedHead = head.get();
+			if (t - cachedHead == items.length) {
+				return false;
+			}
+		}
+		items[(int) t & mask] = item;
+		// publishes the item along with the new tail
+		tail.lazySet(t + 1);
+		return true;
+	}
+
+	/**
+	 * Consumer side.
+	 * @return the oldest item, or null if the ring is empty
+	 */
+	@SuppressWarnings("unchecked")
+	T poll() {
+		final long h = head.get();
+		if (h == cachedTail) {
+			cachedTail = tail.get();
+			if (h == cachedTail) {
+				return null;
+			}
+		}
+		final int idx = (int) h & mask;
+		final T item = (T) items[idx];
+		items[idx] = null;
+		head.lazySet(h + 1);
+		return item;
+	}
+}
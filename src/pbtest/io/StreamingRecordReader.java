@@ -0,0 +1,251 @@
+package pbtest.io;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import pbtest.DataPointProtos.DataPoint;
+import pbtest.DataPointProtos.Header;
+import pbtest.metrics.LoadMetrics;
+
+/**
+ * Reads the records of a .pb file sequentially from a stream, through a single
+ * reused buffer. Memory use doesn't depend on the size of the file: the buffer
+ * only grows past its initial size for a record that doesn't fit in it, up to
+ * {@link #MAX_RECORD_SIZE}. A record that straddles the end of the buffer is
+ * moved to its start before the buffer is refilled.
+ * <p>
+ * Both {@link Framing}s are supported, the framing is detected when the header
+ * is read. Records are either pushed to a {@link RecordHandler} with
+ * {@link #readRecords(RecordHandler)}, or pulled one at a time with
+ * {@link #next(DataPointCursor)} or {@link #read()}.
+ * <p>
+ * With {@link #setMetrics(LoadMetrics)}, every read from the stream is timed,
+ * and so is every batch of {@link LoadMetrics#BATCH_SIZE} records, less the
+ * reads made during the batch. The batch time includes whatever the caller
+ * does with the records.
+ */
+public final class StreamingRecordReader implements Closeable {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+	/** Largest record accepted, same as protobuf's default size limit */
+	public static final int MAX_RECORD_SIZE = 64 << 20;
+
+	private final InputStream in;
+
+	private byte[] data;
+	private ByteBuffer buf;
+	/** valid bytes are data[pos, limit) */
+	private int pos;
+	private int limit;
+	private boolean eof;
+	/** offset in the stream of data[0] */
+	private long bufferOffset;
+
+	private Framing framing;
+	private Header header;
+
+	private LoadMetrics metrics;
+	private long batchStartNanos;
+	private long batchReadNanos;
+	private int batchRecords;
+	/** true if the last call to nextRecord returned a data point */
+	private boolean returnedRecord;
+
+	public StreamingRecordReader(final String path) throws IOException {
+		this(new FileInputStream(path), DEFAULT_BUFFER_SIZE);
+	}
+
+	public StreamingRecordReader(final InputStream in) {
+		this(in, DEFAULT_BUFFER_SIZE);
+	}
+
+	public StreamingRecordReader(final InputStream in, final int bufferSize) {
+		if (bufferSize < 16) {
+			throw new IllegalArgumentException("invalid buffer size: " + bufferSize);
+		}
+		this.in = in;
+		this.data = new byte[bufferSize];
+		this.buf = ByteBuffer.wrap(data);
+	}
+
+	/** @param metrics where reads and batches are recorded, null to disable */
+	public void setMetrics(final LoadMetrics metrics) {
+		this.metrics = metrics;
+		batchStartNanos = System.nanoTime();
+		batchReadNanos = 0;
+		batchRecords = 0;
+	}
+
+	/** Reads the header, if it wasn't already. Must be the first read. */
+	public Header readHeader() throws IOException {
+		if (header != null) {
+			return header;
+		}
+		if (bufferOffset + pos > 0) {
+			throw new IllegalStateException("the header must be read first");
+		}
+		ensure(Framing.VARINT_MAGIC.length);
+		buf.position(pos).limit(limit);
+		framing = Framing.detect(buf);
+		buf.clear();
+		pos += framing.headerOffset();
+
+		final int headerSize = nextRecord();
+		if (headerSize < 0) {
+			throw new IOException("file too small to contain a header");
+		}
+		header = Header.PARSER.parseFrom(data, pos - headerSize, headerSize);
+		return header;
+	}
+
+	/** @return framing of the stream */
+	public Framing framing() throws IOException {
+		readHeader();
+		return framing;
+	}
+
+	/** @return offset in the stream of the next record */
+	public long position() {
+		return bufferOffset + pos;
+	}
+
+	/**
+	 * Passes every remaining record to the handler. The buffer passed to the
+	 * handler is only valid until it returns.
+	 * @return number of records read
+	 */
+	public long readRecords(final RecordHandler handler) throws IOException {
+		readHeader();
+		long count = 0;
+		int size;
+		while ((size = nextRecord()) >= 0) {
+			handler.handle(buf, pos - size, size);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Moves the cursor to the next record, the cursor is valid until the next
+	 * call.
+	 * @return false once all records were read
+	 */
+	public boolean next(final DataPointCursor cursor) throws IOException {
+		readHeader();
+		final int size = nextRecord();
+		if (size < 0) {
+			return false;
+		}
+		cursor.wrap(data, pos - size, size);
+		return true;
+	}
+
+	/** @return the next record parsed into a DataPoint, or null once all records were read */
+	public DataPoint read() throws IOException {
+		readHeader();
+		final int size = nextRecord();
+		if (size < 0) {
+			return null;
+		}
+		return DataPoint.PARSER.parseFrom(data, pos - size, size);
+	}
+
+	/**
+	 * Makes sure the record starting at pos is entirely in the buffer and
+	 * moves pos past it.
+	 * @return size of the record, or -1 at the end of the stream
+	 * @throws IOException if the stream ends in the middle of a record
+	 */
+	private int nextRecord() throws IOException {
+		if (returnedRecord) {
+			returnedRecord = false;
+			countRecord();
+		}
+		if (!ensure(1)) {
+			if (metrics != null && batchRecords > 0) {
+				recordBatch();
+			}
+			return -1;
+		}
+		int size;
+		while ((size = framing.readSize(buf, pos, limit)) < 0) {
+			if (!ensure(limit - pos + 1)) {
+				throw new IOException("truncated record at offset " + position());
+			}
+		}
+		if (size > MAX_RECORD_SIZE) {
+			throw new IOException("record too large at offset " + position() + ": " + size + " bytes");
+		}
+		final int length = framing.prefixSize(size) + size;
+		if (!ensure(length)) {
+			throw new IOException("truncated record at offset " + position());
+		}
+		pos += length;
+		returnedRecord = metrics != null && header != null;
+		return size;
+	}
+
+	/** Counts a record once the caller is done with it */
+	private void countRecord() {
+		if (++batchRecords == LoadMetrics.BATCH_SIZE) {
+			recordBatch();
+		}
+	}
+
+	private void recordBatch() {
+		final long now = System.nanoTime();
+		metrics.recordBatch(now - batchStartNanos - batchReadNanos, batchRecords);
+		batchStartNanos = now;
+		batchReadNanos = 0;
+		batchRecords = 0;
+	}
+
+	/**
+	 * Reads from the stream until at least n bytes follow pos.
+	 * @return false if the stream ended first
+	 */
+	private boolean ensure(final int n) throws IOException {
+		while (limit - pos < n) {
+			if (eof) {
+				return false;
+			}
+			if (pos + n > data.length) {
+				if (n > data.length) {
+					data = Arrays.copyOf(data, Math.max(n, Math.min(data.length * 2, MAX_RECORD_SIZE + Framing.MAX_PREFIX_SIZE)));
+					buf = ByteBuffer.wrap(data);
+				}
+				// keep the partial record, drop what was already read
+				System.arraycopy(data, pos, data, 0, limit - pos);
+				bufferOffset += pos;
+				limit -= pos;
+				pos = 0;
+			}
+			final int read;
+			if (metrics != null) {
+				final long start = System.nanoTime();
+				read = in.read(data, limit, data.length - limit);
+				final long nanos = System.nanoTime() - start;
+				batchReadNanos += nanos;
+				metrics.recordRead(nanos, Math.max(read, 0));
+			} else {
+				read = in.read(data, limit, data.length - limit);
+			}
+			if (read < 0) {
+				eof = true;
+			} else {
+				limit += read;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+}
@@ -0,0 +1,410 @@
+package pbtest.io;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+import com.google.protobuf.CodedOutputStream;
+
+import pbtest.utils.ByteDictionary;
+import pbtest.utils.Bytes;
+import pbtest.utils.Dictionary;
+import pbtest.utils.Utils;
+
+/**
+ * Imports OpenTSDB text files into a single .pb file. Every line holds one
+ * data point, with or without the leading {@code put} of the telnet API:
+ * <pre>
+ * [put] &lt;metric&gt; &lt;timestamp&gt; &lt;value&gt; [&lt;tag=value&gt;...]
+ * </pre>
+ * Values that look like integers, as decided by
+ * {@link Utils#looksLikeInteger(String)}, are stored as ivalues if they fit in
+ * an int and as fvalues otherwise. Blank lines are skipped, any other
+ * malformed line fails the import. Lines are parsed from their bytes by a
+ * {@link TextLineParser}, no object is allocated per line.
+ * <p>
+ * Inputs are cut into splits at line boundaries, gzipped inputs (*.gz) being
+ * a single split, and the splits are imported concurrently. Metric names, tag
+ * keys and tag values all go to a single {@link Dictionary} shared by the
+ * splits, each thread keeping the ids it already resolved in a
+ * {@link ByteDictionary}: the shared dictionary, and the String of a name,
+ * are only needed the first time a thread sees the name.
+ * Every split writes its records to a temporary file next to the output,
+ * since the header can only be written once all strings are known. The output
+ * is then the header followed by the temporary files, in input order. Ids are
+ * given in the order strings are first seen, which depends on scheduling with
+ * more than one thread.
+ */
+public final class TextImporter {
+
+	/** Smallest split handed to a single thread */
+	public static final long MIN_SPLIT_SIZE = 4 << 20;
+
+	/** Number of splits per thread, so that the pool can balance the load */
+	private static final int SPLITS_PER_THREAD = 4;
+
+	private static final int BUFFER_SIZE = 1 << 20;
+
+	private static final byte NEWLINE = '\n';
+
+	private final int threads;
+	private final Framing framing;
+
+	/** shared by all splits, guarded by itself */
+	private final Dictionary dictionary = new Dictionary();
+	/** serialized size of the header, guarded by dictionary */
+	private long headerSize;
+
+	public TextImporter(final int threads, final Framing framing) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("invalid number of threads: " + threads);
+		}
+		this.threads = threads;
+		this.framing = framing;
+	}
+
+	/**
+	 * Imports all the inputs into output.
+	 * @return number of points imported
+	 */
+	public long importFiles(final List<String> inputs, final String output) throws IOException {
+		final List<Split> splits = split(inputs);
+		final List<File> parts = new ArrayList<>(splits.size());
+		for (int i = 0; i < splits.size(); i++) {
+			parts.add(new File(output + "." + i + ".tmp"));
+		}
+
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		try {
+			final List<Future<Long>> results = new ArrayList<>(splits.size());
+			for (int i = 0; i < splits.size(); i++) {
+				final Split split = splits.get(i);
+				final File part = parts.get(i);
+				results.add(pool.submit(new Callable<Long>() {
+					@Override
+					public Long call() throws IOException {
+						try (OutputStream out = new FileOutputStream(part)) {
+							return importSplit(split, out);
+						}
+					}
+				}));
+			}
+			long count = 0;
+			for (Future<Long> result : results) {
+				count += result.get();
+			}
+
+			try (FileOutputStream out = new FileOutputStream(output)) {
+				final OutputStream header = new BufferedOutputStream(out);
+				framing.writeHeader(header, dictionary.toHeader());
+				header.flush();
+				final FileChannel channel = out.getChannel();
+				for (File part : parts) {
+					try (FileChannel in = new FileInputStream(part).getChannel()) {
+						final long size = in.size();
+						for (long position = 0; position < size;) {
+							position += in.transferTo(position, size - position, channel);
+						}
+					}
+				}
+			}
+			return count;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while importing into " + output, e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("failed to import into " + output, e.getCause());
+		} finally {
+			pool.shutdownNow();
+			// the splits still running write into the parts, wait for them first
+			awaitTermination(pool);
+			for (File part : parts) {
+				part.delete();
+			}
+		}
+	}
+
+	/** Waits until every task of the pool is done, even if interrupted */
+	private static void awaitTermination(final ExecutorService pool) {
+		boolean interrupted = false;
+		while (true) {
+			try {
+				if (pool.awaitTermination(1, TimeUnit.MINUTES)) {
+					break;
+				}
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/** A range of an input, holding the lines that start in [start, end) */
+	private static final class Split {
+		final String path;
+		final long start;
+		final long end;
+
+		Split(final String path, final long start, final long end) {
+			this.path = path;
+			this.start = start;
+			this.end = end;
+		}
+	}
+
+	private List<Split> split(final List<String> inputs) throws IOException {
+		long total = 0;
+		for (String input : inputs) {
+			final File file = new File(input);
+			if (!file.isFile()) {
+				throw new IOException("no such file: " + input);
+			}
+			total += file.length();
+		}
+		final long splitSize = Math.max(MIN_SPLIT_SIZE, total / ((long) threads * SPLITS_PER_THREAD));
+
+		final List<Split> splits = new ArrayList<>();
+		for (String input : inputs) {
+			final long size = new File(input).length();
+			if (input.endsWith(".gz")) {
+				splits.add(new Split(input, 0, Long.MAX_VALUE));
+				continue;
+			}
+			for (long start = 0; start < size; start += splitSize) {
+				splits.add(new Split(input, start, Math.min(size, start + splitSize)));
+			}
+		}
+		return splits;
+	}
+
+	/**
+	 * Writes the records of the lines of the split to out, without any
+	 * header.
+	 * @return number of points written
+	 */
+	long importSplit(final Split split, final OutputStream out) throws IOException {
+		final LineReader reader;
+		if (split.end == Long.MAX_VALUE) {
+			reader = new LineReader(new GZIPInputStream(new FileInputStream(split.path), BUFFER_SIZE), 0);
+		} else if (split.start == 0) {
+			reader = new LineReader(new FileInputStream(split.path), 0);
+		} else {
+			// the line holding the byte before the split belongs to the previous split
+			final FileChannel channel = new FileInputStream(split.path).getChannel().position(split.start - 1);
+			reader = new LineReader(Channels.newInputStream(channel), split.start - 1);
+		}
+
+		final DataPointWriter writer = new DataPointWriter(out, framing, BUFFER_SIZE);
+		final TextLineParser parser = new TextLineParser();
+		final ByteDictionary ids = new ByteDictionary();
+		int[] tagKeyIds = new int[8];
+		int[] tagValueIds = new int[8];
+
+		long count = 0;
+		try {
+			if (split.start > 0) {
+				reader.nextLine();
+			}
+			while (reader.position() < split.end) {
+				if ((count & 0xFFFF) == 0 && Thread.currentThread().isInterrupted()) {
+					throw new InterruptedIOException("import of " + split.path + " cancelled");
+				}
+				final long offset = reader.position();
+				if (!reader.nextLine()) {
+					break;
+				}
+				final byte[] line = reader.buffer();
+				final int lineStart = reader.lineStart();
+				final int lineEnd = reader.lineEnd();
+				if (lineStart == lineEnd) {
+					continue;
+				}
+
+				try {
+					parser.parse(line, lineStart, lineEnd);
+
+					final int tagCount = parser.getTagCount();
+					if (tagCount > tagKeyIds.length) {
+						tagKeyIds = new int[tagCount];
+						tagValueIds = new int[tagCount];
+					}
+					for (int i = 0; i < tagCount; i++) {
+						tagKeyIds[i] = id(ids, line, parser.getTagKeyStart(i), parser.getTagKeyEnd(i));
+						tagValueIds[i] = id(ids, line, parser.getTagValueStart(i), parser.getTagValueEnd(i));
+					}
+
+					final int metricId = id(ids, line, parser.getMetricStart(), parser.getMetricEnd());
+					final long timestamp = parser.getTimestamp();
+					if (parser.isInteger()) {
+						final long v = parser.getIvalue();
+						if (v == (int) v) {
+							writer.write(metricId, timestamp, (int) v, tagKeyIds, tagValueIds, tagCount);
+						} else {
+							writer.write(metricId, timestamp, true, (float) v, false, 0, tagKeyIds, tagValueIds, tagCount);
+						}
+					} else {
+						writer.write(metricId, timestamp, true, parser.getFvalue(), false, 0,
+								tagKeyIds, tagValueIds, tagCount);
+					}
+					count++;
+				} catch (IllegalArgumentException e) {
+					// NumberFormatException included
+					throw new IOException(split.path + " at offset " + offset + ": " + e.getMessage() + ": "
+							+ new String(line, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8), e);
+				}
+			}
+			writer.flush();
+			return count;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * @return id of the name buf[from, to) in the shared dictionary, going
+	 * through the thread's cache
+	 */
+	private int id(final ByteDictionary cache, final byte[] buf, final int from, final int to) {
+		final int cached = cache.get(buf, from, to);
+		if (cached >= 0) {
+			return cached;
+		}
+		final String s = new String(buf, from, to - from, StandardCharsets.UTF_8);
+		final int id;
+		synchronized (dictionary) {
+			if (dictionary.contains(s)) {
+				id = dictionary.getId(s);
+			} else {
+				headerSize += CodedOutputStream.computeStringSize(1, s);
+				if (framing == Framing.SHORT && headerSize > Short.MAX_VALUE) {
+					throw new IllegalArgumentException("header too large for short framing, use the varint framing");
+				}
+				id = dictionary.add(s);
+			}
+		}
+		cache.put(buf, from, to, id);
+		return id;
+	}
+
+	/**
+	 * Finds the lines of a stream in a reused buffer, keeping track of their
+	 * offset. Ends of line are found with {@link Bytes#indexOf(byte[], int, int, byte)}.
+	 */
+	private static final class LineReader {
+		private final InputStream in;
+		private byte[] buf = new byte[BUFFER_SIZE];
+		/** unread bytes are buf[pos, limit) */
+		private int pos;
+		private int limit;
+		private boolean eof;
+		/** offset in the input of buf[0] */
+		private long bufferOffset;
+		/** current line is buf[lineStart, lineEnd), without its end of line */
+		private int lineStart;
+		private int lineEnd;
+
+		LineReader(final InputStream in, final long offset) {
+			this.in = in;
+			this.bufferOffset = offset;
+		}
+
+		/** @return offset of the next line */
+		long position() {
+			return bufferOffset + pos;
+		}
+
+		byte[] buffer() {
+			return buf;
+		}
+
+		int lineStart() {
+			return lineStart;
+		}
+
+		int lineEnd() {
+			return lineEnd;
+		}
+
+		/**
+		 * Moves to the next line, valid until the next call.
+		 * @return false at the end of the input
+		 */
+		boolean nextLine() throws IOException {
+			int scanned = pos;
+			while (true) {
+				final int newline = Bytes.indexOf(buf, scanned, limit, NEWLINE);
+				if (newline >= 0) {
+					lineStart = pos;
+					lineEnd = newline > pos && buf[newline - 1] == '\r' ? newline - 1 : newline;
+					pos = newline + 1;
+					return true;
+				}
+				scanned = limit;
+				if (eof) {
+					if (pos == limit) {
+						return false;
+					}
+					// last line without an end of line
+					lineStart = pos;
+					lineEnd = limit;
+					pos = limit;
+					return true;
+				}
+				scanned -= fill();
+			}
+		}
+
+		/**
+		 * Moves the unread bytes to the start of the buffer and reads more.
+		 * @return number of bytes the unread bytes moved by
+		 */
+		private int fill() throws IOException {
+			final int shift = pos;
+			if (pos > 0) {
+				System.arraycopy(buf, pos, buf, 0, limit - pos);
+				bufferOffset += pos;
+				limit -= pos;
+				pos = 0;
+			} else if (limit == buf.length) {
+				if (buf.length >= Integer.MAX_VALUE / 2) {
+					throw new IOException("line too long at offset " + bufferOffset);
+				}
+				buf = Arrays.copyOf(buf, buf.length * 2);
+			}
+			final int read = in.read(buf, limit, buf.length - limit);
+			if (read < 0) {
+				eof = true;
+			} else {
+				limit += read;
+			}
+			return shift;
+		}
+
+		void close() throws IOException {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package pbtest.io;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import pbtest.utils.Bytes;
+import pbtest.utils.Utils;
+
+/**
+ * Parses OpenTSDB text lines, {@code [put] <metric> <timestamp> <value>
+ * [<tag=value>...]}, straight from the bytes of the line. Fields are found with
+ * {@link Bytes#indexOf(byte[], int, int, byte)}, numbers are parsed from the
+ * bytes and strings are only returned as ranges of the line, so a parser
+ * reused across lines doesn't allocate (except to grow its tag arrays, or to
+ * report an error).
+ * <p>
+ * Accepts the same lines as splitting them with
+ * {@link Utils#splitString(String, char)} and reading the tags with
+ * {@link Utils#parse(java.util.HashMap, String)}: fields are separated by
+ * single spaces, empty tag fields are skipped and a tag repeated with the same
+ * value is only kept once. Tags are kept in the order of the line.
+ */
+public final class TextLineParser {
+
+	private static final byte SPACE = ' ';
+	private static final byte EQUALS = '=';
+
+	private byte[] buf;
+
+	private int metricStart;
+	private int metricEnd;
+	private long timestamp;
+	private boolean integer;
+	private long ivalue;
+	private float fvalue;
+
+	/** per tag: [start, end) of the key, then of the value */
+	private int[] tags = new int[4 * 8];
+	private int tagCount;
+
+	/**
+	 * Parses the line buf[from, to), without its end of line. The ranges
+	 * returned by the getters are valid until the next call.
+	 * @throws IllegalArgumentException if the line is malformed
+	 */
+	public void parse(final byte[] buf, final int from, final int to) {
+		this.buf = buf;
+		tagCount = 0;
+
+		int start = from;
+		int end = fieldEnd(buf, start, to);
+		if (end - start == 3 && buf[start] == 'p' && buf[start + 1] == 'u' && buf[start + 2] == 't') {
+			start = nextField(end, to);
+			end = fieldEnd(buf, start, to);
+		}
+		if (start == end) {
+			throw new IllegalArgumentException("invalid metric: ");
+		}
+		metricStart = start;
+		metricEnd = end;
+
+		start = nextField(end, to);
+		end = fieldEnd(buf, start, to);
+		timestamp = Utils.parseLong(buf, start, end);
+		if (timestamp <= 0) {
+			throw new IllegalArgumentException("invalid timestamp: " + timestamp);
+		}
+
+		start = nextField(end, to);
+		end = fieldEnd(buf, start, to);
+		if (start == end) {
+			throw new IllegalArgumentException("invalid value: ");
+		}
+		integer = Utils.looksLikeInteger(buf, start, end);
+		if (integer) {
+			ivalue = Utils.parseLong(buf, start, end);
+		} else {
+			fvalue = Utils.parseFloat(buf, start, end);
+		}
+
+		while (end < to) {
+			start = end + 1;
+			end = fieldEnd(buf, start, to);
+			if (start < end) {
+				addTag(start, end);
+			}
+		}
+	}
+
+	/** @return start of the field after the space at end */
+	private static int nextField(final int end, final int to) {
+		if (end >= to) {
+			throw new IllegalArgumentException("not enough fields");
+		}
+		return end + 1;
+	}
+
+	private static int fieldEnd(final byte[] buf, final int start, final int to) {
+		final int space = Bytes.indexOf(buf, start, to, SPACE);
+		return space < 0 ? to : space;
+	}
+
+	private void addTag(final int start, final int end) {
+		final int equals = Bytes.indexOf(buf, start, end, EQUALS);
+		if (equals <= start || equals == end - 1 || Bytes.indexOf(buf, equals + 1, end, EQUALS) >= 0) {
+			throw new IllegalArgumentException("invalid tag: " + string(start, end));
+		}
+		for (int t = 0; t < tagCount; t++) {
+			final int k = 4 * t;
+			if (Arrays.equals(buf, tags[k], tags[k + 1], buf, start, equals)) {
+				if (Arrays.equals(buf, tags[k + 2], tags[k + 3], buf, equals + 1, end)) {
+					return;
+				}
+				throw new IllegalArgumentException("duplicate tag: " + string(start, end));
+			}
+		}
+		if (4 * tagCount == tags.length) {
+			tags = Arrays.copyOf(tags, tags.length * 2);
+		}
+		final int k = 4 * tagCount++;
+		tags[k] = start;
+		tags[k + 1] = equals;
+		tags[k + 2] = equals + 1;
+		tags[k + 3] = end;
+	}
+
+	private String string(final int start, final int end) {
+		return new String(buf, start, end - start, StandardCharsets.UTF_8);
+	}
+
+	public int getMetricStart() {
+		return metricStart;
+	}
+
+	public int getMetricEnd() {
+		return metricEnd;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/** @return true if the value looks like an integer, see {@link Utils#looksLikeInteger(String)} */
+	public boolean isInteger() {
+		return integer;
+	}
+
+	/** @return the value, if {@link #isInteger()} */
+	public long getIvalue() {
+		return ivalue;
+	}
+
+	/** @return the value, unless {@link #isInteger()} */
+	public float getFvalue() {
+		return fvalue;
+	}
+
+	public int getTagCount() {
+		return tagCount;
+	}
+
+	public int getTagKeyStart(final int i) {
+		return tags[4 * i];
+	}
+
+	public int getTagKeyEnd(final int i) {
+		return tags[4 * i + 1];
+	}
+
+	public int getTagValueStart(final int i) {
+		return tags[4 * i + 2];
+	}
+
+	public int getTagValueEnd(final int i) {
+		return tags[4 * i + 3];
+	}
+}
@@ -0,0 +1,178 @@
+package pbtest.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Sparse index mapping timestamps to byte offsets of a .pb file. An entry is
+ * kept every {@code interval} records, holding the timestamp and the offset of
+ * the record that starts the block. Records are expected to be written in
+ * timestamp order, as done by {@code GenerateData}.
+ * <p>
+ * The index is stored in a sidecar file next to the data file, see
+ * {@link #sidecarPath(String)}. It is either written along with the data with
+ * a {@link Writer}, or rebuilt offline with
+ * {@link #build(MappedRecordReader, String, int)}.
+ */
+public final class TimestampIndex {
+
+	/** "PBTI" */
+	private static final int MAGIC = 0x50425449;
+
+	public static final int DEFAULT_INTERVAL = 4096;
+
+	private final int interval;
+	private final long[] timestamps;
+	private final long[] offsets;
+
+	private TimestampIndex(final int interval, final long[] timestamps, final long[] offsets) {
+		this.interval = interval;
+		this.timestamps = timestamps;
+		this.offsets = offsets;
+	}
+
+	/** @return path of the index file for the given data file */
+	public static String sidecarPath(final String path) {
+		return path + ".idx";
+	}
+
+	public int getInterval() {
+		return interval;
+	}
+
+	public int size() {
+		return timestamps.length;
+	}
+
+	/**
+	 * Computes the byte range holding all records with a timestamp in [start,
+	 * end). The range may also hold records outside of the time window, at most
+	 * one block on each side.
+	 * @param dataEnd end offset of the data, usually the file size
+	 * @return {startOffset, endOffset}, empty if the window is empty
+	 */
+	public long[] range(final long start, final long end, final long dataEnd) {
+		if (timestamps.length == 0 || start >= end) {
+			return new long[] { dataEnd, dataEnd };
+		}
+
+		// the block preceding the first one starting at or after start may end
+		// with records in the window
+		final int lo = Math.max(0, lowerBound(start) - 1);
+		// records of the first block starting at or after end are all out of the window
+		final int hi = lowerBound(end);
+
+		final long endOffset = hi < offsets.length ? offsets[hi] : dataEnd;
+		return new long[] { offsets[lo], Math.max(offsets[lo], endOffset) };
+	}
+
+	/** @return index of the first entry whose timestamp is &gt;= timestamp */
+	private int lowerBound(final long timestamp) {
+		int lo = 0;
+		int hi = timestamps.length;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (timestamps[mid] < timestamp) {
+				lo = mid + 1;
+			} else {
+				hi = mid;
+			}
+		}
+		return lo;
+	}
+
+	public static TimestampIndex read(final String indexPath) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexPath)))) {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("not a timestamp index: " + indexPath);
+			}
+			final int interval = in.readInt();
+
+			long[] timestamps = new long[1024];
+			long[] offsets = new long[1024];
+			int n = 0;
+			while (true) {
+				final long timestamp;
+				try {
+					timestamp = in.readLong();
+				} catch (EOFException e) {
+					break;
+				}
+				if (n == timestamps.length) {
+					timestamps = Arrays.copyOf(timestamps, n * 2);
+					offsets = Arrays.copyOf(offsets, n * 2);
+				}
+				timestamps[n] = timestamp;
+				offsets[n] = in.readLong();
+				n++;
+			}
+
+			return new TimestampIndex(interval, Arrays.copyOf(timestamps, n), Arrays.copyOf(offsets, n));
+		}
+	}
+
+	/**
+	 * Rebuilds the index of an existing data file and stores it in the sidecar
+	 * file.
+	 */
+	public static void build(final MappedRecordReader reader, final String indexPath, final int interval) throws IOException {
+		try (final Writer writer = new Writer(indexPath, interval)) {
+			final DataPointCursor cursor = new DataPointCursor();
+			final Framing framing = reader.framing();
+			final long[] offset = { reader.dataOffset() };
+			reader.readRecords(new RecordHandler() {
+				@Override
+				public void handle(ByteBuffer buf, int off, int length) throws IOException {
+					writer.add(cursor.wrap(buf, off, length).getTimestamp(), offset[0]);
+					offset[0] += framing.prefixSize(length) + length;
+				}
+			});
+		}
+	}
+
+	/**
+	 * Streams index entries to the sidecar file while the data file is being
+	 * written. {@link #add(long, long)} must be called for every record.
+	 */
+	public static final class Writer implements Closeable {
+		private final DataOutputStream out;
+		private final int interval;
+		private long records;
+
+		public Writer(final String indexPath, final int interval) throws IOException {
+			if (interval <= 0) {
+				throw new IllegalArgumentException("invalid index interval: " + interval);
+			}
+			this.interval = interval;
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(indexPath))));
+			out.writeInt(MAGIC);
+			out.writeInt(interval);
+		}
+
+		/**
+		 * @param timestamp timestamp of the record
+		 * @param offset offset of the record's length prefix in the data file
+		 */
+		public void add(final long timestamp, final long offset) throws IOException {
+			if (records++ % interval == 0) {
+				out.writeLong(timestamp);
+				out.writeLong(offset);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,172 @@
+package pbtest.metrics;
+
+import java.util.Arrays;
+
+/**
+ * Histogram of non negative long values with a fixed relative precision, laid
+ * out like HdrHistogram: values are bucketed by their magnitude (power of 2)
+ * and each magnitude is split into linear sub-buckets. Recording is a few
+ * shifts and an array increment, and the whole long range is covered without
+ * any resizing, so the histogram can be fed from hot code.
+ * <p>
+ * With d significant digits, a value is reported within 10^-d of its relative
+ * value. Instances are not thread safe: each thread records into its own, the
+ * histograms are then combined with {@link #merge(Histogram)}.
+ */
+public final class Histogram {
+
+	public static final int DEFAULT_SIGNIFICANT_DIGITS = 2;
+
+	/** log2 of the number of sub-buckets in a magnitude */
+	private final int subBucketBits;
+	private final long subBucketMask;
+	private final int subBucketHalfCount;
+	private final int leadingZeroCountBase;
+	private final long[] counts;
+
+	private long count;
+	private long min = Long.MAX_VALUE;
+	private long max;
+	private double sum;
+
+	public Histogram() {
+		this(DEFAULT_SIGNIFICANT_DIGITS);
+	}
+
+	/** @param significantDigits precision of the values, 1 to 3 */
+	public Histogram(final int significantDigits) {
+		if (significantDigits < 1 || significantDigits > 3) {
+			throw new IllegalArgumentException("invalid number of significant digits: " + significantDigits);
+		}
+		// enough sub-buckets to tell values 10^-d apart in the lower half of a magnitude
+		long largestSingleUnit = 2;
+		for (int i = 0; i < significantDigits; i++) {
+			largestSingleUnit *= 10;
+		}
+		subBucketBits = 64 - Long.numberOfLeadingZeros(largestSingleUnit - 1);
+		subBucketMask = (1L << subBucketBits) - 1;
+		subBucketHalfCount = 1 << (subBucketBits - 1);
+		leadingZeroCountBase = 64 - subBucketBits;
+		// the first magnitude has all its sub-buckets, the others only their upper half
+		counts = new long[(leadingZeroCountBase + 1) * subBucketHalfCount];
+	}
+
+	/** Records value, negative values are recorded as 0 */
+	public void record(final long value) {
+		record(value, 1);
+	}
+
+	/** Records n occurrences of value */
+	public void record(long value, final long n) {
+		if (value < 0) {
+			value = 0;
+		}
+		counts[index(value)] += n;
+		count += n;
+		sum += (double) value * n;
+		if (value < min) {
+			min = value;
+		}
+		if (value > max) {
+			max = value;
+		}
+	}
+
+	private int index(final long value) {
+		final int bucket = leadingZeroCountBase - Long.numberOfLeadingZeros(value | subBucketMask);
+		final int subBucket = (int) (value >>> bucket);
+		return ((bucket + 1) << (subBucketBits - 1)) + subBucket - subBucketHalfCount;
+	}
+
+	/** @return highest value counted at the given index */
+	private long highestValue(final int index) {
+		int bucket = (index >> (subBucketBits - 1)) - 1;
+		int subBucket = (index & (subBucketHalfCount - 1)) + subBucketHalfCount;
+		if (bucket < 0) {
+			subBucket -= subBucketHalfCount;
+			bucket = 0;
+		}
+		return ((long) subBucket << bucket) + (1L << bucket) - 1;
+	}
+
+	/** Adds the counts of other into this histogram */
+	public Histogram merge(final Histogram other) {
+		if (other.subBucketBits != subBucketBits) {
+			throw new IllegalArgumentException("can't merge histograms of different precisions");
+		}
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		count += other.count;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		return this;
+	}
+
+	public void reset() {
+		Arrays.fill(counts, 0);
+		count = 0;
+		sum = 0;
+		min = Long.MAX_VALUE;
+		max = 0;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	/** @return smallest value recorded, 0 if there is none */
+	public long getMin() {
+		return count == 0 ? 0 : min;
+	}
+
+	public long getMax() {
+		return max;
+	}
+
+	/** @return exact mean of the values recorded, NaN if there is none */
+	public double getMean() {
+		return sum / count;
+	}
+
+	/**
+	 * @param percentile in [0, 100]
+	 * @return the value below which the given percentage of the values fall,
+	 * within the precision of the histogram, 0 if it is empty
+	 */
+	public long getValueAtPercentile(final double percentile) {
+		if (!(percentile >= 0 && percentile <= 100)) {
+			throw new IllegalArgumentException("invalid percentile: " + percentile);
+		}
+		if (count == 0) {
+			return 0;
+		}
+		final long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+		long n = 0;
+		for (int i = 0; i < counts.length; i++) {
+			n += counts[i];
+			if (n >= rank) {
+				return Math.max(getMin(), Math.min(max, highestValue(i)));
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * @param scale values are divided by scale, e.g. 1000 to print nanoseconds
+	 * as microseconds
+	 * @return count, min, mean, a few percentiles and max
+	 */
+	public String toString(final double scale) {
+		return String.format("count=%d, min=%.1f, mean=%.1f, p50=%.1f, p90=%.1f, p99=%.1f, p99.9=%.1f, max=%.1f",
+				count, getMin() / scale, count == 0 ? 0 : getMean() / scale,
+				getValueAtPercentile(50) / scale, getValueAtPercentile(90) / scale,
+				getValueAtPercentile(99) / scale, getValueAtPercentile(99.9) / scale, max / scale);
+	}
+
+	@Override
+	public String toString() {
+		return toString(1);
+	}
+}
@@ -0,0 +1,167 @@
+package pbtest.metrics;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Instrumentation of a load, for the tail latencies and stalls that an
+ * average hides:
+ * <ul>
+ * <li>decode time of each batch of records, see {@link #recordBatch(long, long)};</li>
+ * <li>time spent waiting on each read from the input, and the bytes it
+ * returned, see {@link #recordRead(long, long)};</li>
+ * <li>records and bytes per interval of time since the metrics were created,
+ * which shows stalls and throughput drifting over time;</li>
+ * <li>duration of each {@link LoadPhase}.</li>
+ * </ul>
+ * Loaders record once per batch or per read, never per record, so that the
+ * cost of the instrumentation is a couple of {@code System.nanoTime()} calls
+ * per thousands of records. Recording methods are synchronized, the
+ * histograms can then be shared by every thread of a load.
+ */
+public final class LoadMetrics {
+
+	public static final long DEFAULT_INTERVAL_NANOS = 1000000000L;
+
+	/** Records per batch, for loaders that don't have natural batches */
+	public static final int BATCH_SIZE = 4096;
+
+	private final long startNanos = System.nanoTime();
+	private final long intervalNanos;
+
+	private final Histogram decodeNanos = new Histogram();
+	private final Histogram readNanos = new Histogram();
+	private final Histogram readBytes = new Histogram();
+
+	private long[] recordsPerInterval = new long[16];
+	private long[] bytesPerInterval = new long[16];
+	private long records;
+	private long bytes;
+
+	private final Map<String, Long> phaseNanos = new LinkedHashMap<>();
+
+	public LoadMetrics() {
+		this(DEFAULT_INTERVAL_NANOS);
+	}
+
+	/** @param intervalNanos length of the intervals of the throughput series */
+	public LoadMetrics(final long intervalNanos) {
+		if (intervalNanos <= 0) {
+			throw new IllegalArgumentException("invalid interval: " + intervalNanos);
+		}
+		this.intervalNanos = intervalNanos;
+	}
+
+	/**
+	 * @param nanos time spent decoding the batch, excluding I/O
+	 * @param n number of records in the batch
+	 */
+	public synchronized void recordBatch(final long nanos, final long n) {
+		decodeNanos.record(nanos);
+		final int interval = interval();
+		recordsPerInterval[interval] += n;
+		records += n;
+	}
+
+	/**
+	 * @param nanos time spent waiting on a read from the input
+	 * @param n number of bytes read
+	 */
+	public synchronized void recordRead(final long nanos, final long n) {
+		readNanos.record(nanos);
+		readBytes.record(n);
+		final int interval = interval();
+		bytesPerInterval[interval] += n;
+		bytes += n;
+	}
+
+	synchronized void recordPhase(final String name, final long nanos) {
+		final Long previous = phaseNanos.get(name);
+		phaseNanos.put(name, previous == null ? nanos : previous + nanos);
+	}
+
+	/** @return index of the current interval, the series are grown to hold it */
+	private int interval() {
+		final long interval = (System.nanoTime() - startNanos) / intervalNanos;
+		if (interval >= recordsPerInterval.length) {
+			final int length = (int) Math.max(interval + 1, recordsPerInterval.length * 2L);
+			recordsPerInterval = Arrays.copyOf(recordsPerInterval, length);
+			bytesPerInterval = Arrays.copyOf(bytesPerInterval, length);
+		}
+		return (int) interval;
+	}
+
+	public synchronized long getRecordCount() {
+		return records;
+	}
+
+	public synchronized long getByteCount() {
+		return bytes;
+	}
+
+	/** @return number of records decoded during each interval, up to the last one with any */
+	public synchronized long[] getRecordsPerInterval() {
+		return trim(recordsPerInterval);
+	}
+
+	/** @return number of bytes read during each interval, up to the last one with any */
+	public synchronized long[] getBytesPerInterval() {
+		return trim(bytesPerInterval);
+	}
+
+	private static long[] trim(final long[] series) {
+		int length = series.length;
+		while (length > 0 && series[length - 1] == 0) {
+			length--;
+		}
+		return Arrays.copyOf(series, length);
+	}
+
+	/** @return a copy of the decode times of the batches, in nanoseconds */
+	public synchronized Histogram getDecodeNanos() {
+		return new Histogram().merge(decodeNanos);
+	}
+
+	/** @return a copy of the wait times of the reads, in nanoseconds */
+	public synchronized Histogram getReadNanos() {
+		return new Histogram().merge(readNanos);
+	}
+
+	/** @return a copy of the sizes of the reads, in bytes */
+	public synchronized Histogram getReadBytes() {
+		return new Histogram().merge(readBytes);
+	}
+
+	/** @return a multi-line summary of the metrics, metrics that weren't recorded are left out */
+	public synchronized String report() {
+		final StringBuilder sb = new StringBuilder();
+		if (decodeNanos.getCount() > 0) {
+			sb.append("decode (us per batch): ").append(decodeNanos.toString(1e3)).append('\n');
+		}
+		if (readNanos.getCount() > 0) {
+			sb.append("read wait (us per read): ").append(readNanos.toString(1e3)).append('\n');
+			sb.append("read size (KB per read): ").append(readBytes.toString(1024)).append('\n');
+		}
+		final double seconds = intervalNanos / 1e9;
+		if (records > 0) {
+			sb.append(String.format("records/s, every %.3gs:", seconds));
+			for (long n : getRecordsPerInterval()) {
+				sb.append(String.format(" %,.0f", n / seconds));
+			}
+			sb.append('\n');
+		}
+		if (bytes > 0) {
+			sb.append(String.format("MB/s read, every %.3gs:", seconds));
+			for (long n : getBytesPerInterval()) {
+				sb.append(String.format(" %.1f", n / seconds / (1 << 20)));
+			}
+			sb.append('\n');
+		}
+		sb.append("phases:");
+		for (Map.Entry<String, Long> phase : phaseNanos.entrySet()) {
+			sb.append(String.format(" %s %.3fs", phase.getKey(), phase.getValue() / 1e9));
+		}
+		return sb.toString();
+	}
+}
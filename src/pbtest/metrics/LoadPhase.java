@@ -0,0 +1,55 @@
+package pbtest.metrics;
+
+/**
+ * A named phase of a load, such as reading a file or decoding it, from
+ * {@link #begin(String, LoadMetrics)} to {@link #close()}. Each phase is emitted as a
+ * {@code pbtest.LoadPhase} JFR event, which costs next to nothing unless a
+ * recording is running (e.g. with {@code -XX:StartFlightRecording}), and its
+ * duration is added to the {@link LoadMetrics}, if any.
+ */
+public final class LoadPhase implements AutoCloseable {
+
+	private final String name;
+	private final LoadMetrics metrics;
+	private final LoadPhaseEvent event = new LoadPhaseEvent();
+	private final long startNanos;
+	private long records;
+	private long bytes;
+
+	private LoadPhase(final String name, final LoadMetrics metrics) {
+		this.name = name;
+		this.metrics = metrics;
+		event.begin();
+		startNanos = System.nanoTime();
+	}
+
+	/** @param metrics where the duration of the phase goes, may be null */
+	public static LoadPhase begin(final String name, final LoadMetrics metrics) {
+		return new LoadPhase(name, metrics);
+	}
+
+	/** Sets the number of records handled by the phase, reported in the event */
+	public void setRecords(final long records) {
+		this.records = records;
+	}
+
+	/** Sets the number of bytes handled by the phase, reported in the event */
+	public void setBytes(final long bytes) {
+		this.bytes = bytes;
+	}
+
+	@Override
+	public void close() {
+		final long nanos = System.nanoTime() - startNanos;
+		event.end();
+		if (event.shouldCommit()) {
+			event.phase = name;
+			event.records = records;
+			event.bytes = bytes;
+			event.commit();
+		}
+		if (metrics != null) {
+			metrics.recordPhase(name, nanos);
+		}
+	}
+}
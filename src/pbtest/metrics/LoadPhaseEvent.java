@@ -0,0 +1,28 @@
+package pbtest.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** JFR event spanning a {@link LoadPhase} */
+@Name("pbtest.LoadPhase")
+@Label("Load Phase")
+@Category({ "pbtest", "Load" })
+@Description("A phase of the loading of a file")
+@StackTrace(false)
+final class LoadPhaseEvent extends Event {
+
+	@Label("Phase")
+	String phase;
+
+	@Label("Records")
+	long records;
+
+	@Label("Bytes")
+	@DataAmount
+	long bytes;
+}
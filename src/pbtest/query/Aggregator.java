@@ -0,0 +1,45 @@
+package pbtest.query;
+
+/**
+ * How the points of a downsampling interval are reduced to a single value.
+ */
+public enum Aggregator {
+
+	SUM {
+		@Override
+		public double aggregate(final long count, final double sum, final double min, final double max) {
+			return sum;
+		}
+	},
+
+	AVG {
+		@Override
+		public double aggregate(final long count, final double sum, final double min, final double max) {
+			return sum / count;
+		}
+	},
+
+	MIN {
+		@Override
+		public double aggregate(final long count, final double sum, final double min, final double max) {
+			return min;
+		}
+	},
+
+	MAX {
+		@Override
+		public double aggregate(final long count, final double sum, final double min, final double max) {
+			return max;
+		}
+	},
+
+	COUNT {
+		@Override
+		public double aggregate(final long count, final double sum, final double min, final double max) {
+			return count;
+		}
+	};
+
+	/** @return value of an interval holding count points, count is never 0 */
+	public abstract double aggregate(long count, double sum, double min, double max);
+}
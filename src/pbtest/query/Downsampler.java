@@ -0,0 +1,132 @@
+package pbtest.query;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates points into fixed intervals of [start, end). Every interval
+ * keeps its count, sum, min and max, so the result can be computed for any
+ * {@link Aggregator} and downsamplers filled concurrently can be merged.
+ */
+public final class Downsampler {
+
+	/** Largest number of intervals of a query */
+	public static final int MAX_INTERVALS = 1 << 24;
+
+	private final long start;
+	private final long end;
+	private final long interval;
+
+	private final long[] counts;
+	private final double[] sums;
+	private final double[] mins;
+	private final double[] maxs;
+
+	public Downsampler(final long start, final long end, final long interval) {
+		if (start >= end || interval <= 0 || (end - start - 1) / interval >= MAX_INTERVALS) {
+			throw new IllegalArgumentException("invalid downsampling of [" + start + ", " + end + ") every " + interval);
+		}
+		this.start = start;
+		this.end = end;
+		this.interval = interval;
+
+		final int n = (int) ((end - start - 1) / interval) + 1;
+		counts = new long[n];
+		sums = new double[n];
+		mins = new double[n];
+		maxs = new double[n];
+		Arrays.fill(mins, Double.POSITIVE_INFINITY);
+		Arrays.fill(maxs, Double.NEGATIVE_INFINITY);
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public long getEnd() {
+		return end;
+	}
+
+	public long getInterval() {
+		return interval;
+	}
+
+	/** Adds a point, ignored if its timestamp is outside of [start, end) */
+	public void add(final long timestamp, final double value) {
+		if (timestamp < start || timestamp >= end) {
+			return;
+		}
+		final int b = (int) ((timestamp - start) / interval);
+		counts[b]++;
+		sums[b] += value;
+		mins[b] = Math.min(mins[b], value);
+		maxs[b] = Math.max(maxs[b], value);
+	}
+
+	/**
+	 * Adds the first n points of the arrays. The interval of the previous point
+	 * is reused as long as the timestamps stay in it, so sorted timestamps cost
+	 * one division per interval instead of one per point.
+	 */
+	public void add(final long[] timestamps, final double[] values, final int n) {
+		int b = -1;
+		long bucketStart = 0;
+		long bucketEnd = 0;
+		for (int i = 0; i < n; i++) {
+			final long timestamp = timestamps[i];
+			if (timestamp < bucketStart || timestamp >= bucketEnd) {
+				if (timestamp < start || timestamp >= end) {
+					continue;
+				}
+				b = (int) ((timestamp - start) / interval);
+				bucketStart = start + b * interval;
+				// the last interval may be cut short by end
+				bucketEnd = Math.min(bucketStart + interval, end);
+			}
+			final double value = values[i];
+			counts[b]++;
+			sums[b] += value;
+			if (value < mins[b]) {
+				mins[b] = value;
+			}
+			if (value > maxs[b]) {
+				maxs[b] = value;
+			}
+		}
+	}
+
+	/** Adds the points of other, which must cover the same intervals */
+	public void merge(final Downsampler other) {
+		if (other.start != start || other.end != end || other.interval != interval) {
+			throw new IllegalArgumentException("can't merge downsamplers of different intervals");
+		}
+		for (int b = 0; b < counts.length; b++) {
+			counts[b] += other.counts[b];
+			sums[b] += other.sums[b];
+			mins[b] = Math.min(mins[b], other.mins[b]);
+			maxs[b] = Math.max(maxs[b], other.maxs[b]);
+		}
+	}
+
+	/** @return the non empty intervals reduced with the aggregator */
+	public QueryResult result(final Aggregator aggregator) {
+		int n = 0;
+		for (long count : counts) {
+			if (count > 0) {
+				n++;
+			}
+		}
+		final long[] timestamps = new long[n];
+		final double[] values = new double[n];
+		final long[] pointCounts = new long[n];
+		int i = 0;
+		for (int b = 0; b < counts.length; b++) {
+			if (counts[b] > 0) {
+				timestamps[i] = start + b * interval;
+				values[i] = aggregator.aggregate(counts[b], sums[b], mins[b], maxs[b]);
+				pointCounts[i] = counts[b];
+				i++;
+			}
+		}
+		return new QueryResult(timestamps, values, pointCounts);
+	}
+}
@@ -0,0 +1,160 @@
+package pbtest.query;
+
+import java.util.Arrays;
+
+import pbtest.io.DataPointCursor;
+import pbtest.store.SeriesStore;
+
+/**
+ * Selects the points of a metric in [start, end) whose tags match the
+ * filters, and downsamples them to one value every interval. All matching
+ * series are aggregated together.
+ * <p>
+ * Filters on different tag keys must all match, filters on the same key are
+ * alternatives: host=a, host=b, dc=x selects (host a or b) and dc x.
+ */
+public final class Query {
+
+	/** Filter value matching any value of the tag, as long as the tag is set */
+	public static final int ANY_VALUE = -1;
+
+	private final int metricId;
+	private final long start;
+	private final long end;
+	private final long interval;
+	private final Aggregator aggregator;
+
+	private int[] filterKeys = new int[4];
+	private int[] filterValues = new int[4];
+	private int filterCount;
+
+	public Query(final int metricId, final long start, final long end, final long interval, final Aggregator aggregator) {
+		this.metricId = metricId;
+		this.start = start;
+		this.end = end;
+		this.interval = interval;
+		this.aggregator = aggregator;
+	}
+
+	/**
+	 * Only keeps the points whose tag keyId has the value valueId, or any value
+	 * if valueId is {@link #ANY_VALUE}. Values given for the same key are
+	 * alternatives.
+	 * @return this query
+	 */
+	public Query filter(final int keyId, final int valueId) {
+		if (filterCount == filterKeys.length) {
+			filterKeys = Arrays.copyOf(filterKeys, filterCount * 2);
+			filterValues = Arrays.copyOf(filterValues, filterCount * 2);
+		}
+		filterKeys[filterCount] = keyId;
+		filterValues[filterCount] = valueId;
+		filterCount++;
+		return this;
+	}
+
+	public int getMetricId() {
+		return metricId;
+	}
+
+	public long getStart() {
+		return start;
+	}
+
+	public long getEnd() {
+		return end;
+	}
+
+	public long getInterval() {
+		return interval;
+	}
+
+	public Aggregator getAggregator() {
+		return aggregator;
+	}
+
+	public int getFilterCount() {
+		return filterCount;
+	}
+
+	public int getFilterKeyId(final int i) {
+		return filterKeys[i];
+	}
+
+	/** @return value id of the i-th filter, or {@link #ANY_VALUE} */
+	public int getFilterValueId(final int i) {
+		return filterValues[i];
+	}
+
+	/** @return true if no filter before the i-th one is on the same key */
+	public boolean isFirstFilterOfKey(final int i) {
+		for (int f = 0; f < i; f++) {
+			if (filterKeys[f] == filterKeys[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** @return true if the value id matches one of the filters on keyId, starting at the first one */
+	private boolean matchesKey(final int first, final int keyId, final int valueId) {
+		for (int f = first; f < filterCount; f++) {
+			if (filterKeys[f] == keyId && (filterValues[f] == ANY_VALUE || filterValues[f] == valueId)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/** @return a downsampler covering the intervals of the query */
+	public Downsampler newDownsampler() {
+		return new Downsampler(start, end, interval);
+	}
+
+	/** @return true if the metric and tags of the decoded point match, its timestamp isn't checked */
+	public boolean matches(final DataPointCursor dp) {
+		if (dp.getMetricId() != metricId) {
+			return false;
+		}
+		for (int f = 0; f < filterCount; f++) {
+			if (!isFirstFilterOfKey(f)) {
+				continue;
+			}
+			boolean found = false;
+			for (int t = 0; t < dp.getTagCount(); t++) {
+				if (dp.getTagKeyId(t) == filterKeys[f]) {
+					found = matchesKey(f, filterKeys[f], dp.getTagValueId(t));
+					break;
+				}
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/** @return true if the metric and tags of the series match */
+	public boolean matches(final SeriesStore store, final int series) {
+		if (store.getMetricId(series) != metricId) {
+			return false;
+		}
+		final int tagCount = store.getTagCount(series);
+		for (int f = 0; f < filterCount; f++) {
+			if (!isFirstFilterOfKey(f)) {
+				continue;
+			}
+			boolean found = false;
+			for (int t = 0; t < tagCount; t++) {
+				if (store.getTagKeyId(series, t) == filterKeys[f]) {
+					found = matchesKey(f, filterKeys[f], store.getTagValueId(series, t));
+					break;
+				}
+			}
+			if (!found) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
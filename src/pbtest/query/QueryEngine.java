@@ -0,0 +1,70 @@
+package pbtest.query;
+
+import org.roaringbitmap.PeekableIntIterator;
+
+import pbtest.index.TagIndex;
+import pbtest.store.SeriesReader;
+import pbtest.store.SeriesStore;
+
+/**
+ * Runs queries over a {@link SeriesStore}. The matching series are found with
+ * the {@link TagIndex} if one is given, otherwise every series of the store is
+ * checked against the query's filters. Series whose time span doesn't
+ * overlap the query are skipped without reading their points, the others are
+ * read one chunk at a time into primitive arrays and downsampled in a single
+ * loop.
+ * <p>
+ * An engine reuses its buffers and must not be used by several threads at once.
+ */
+public final class QueryEngine {
+
+	private final SeriesStore store;
+	private final TagIndex index;
+	private final SeriesReader reader;
+	private final long[] timestamps;
+	private final double[] values;
+
+	public QueryEngine(final SeriesStore store) {
+		this(store, null);
+	}
+
+	/** @param index index of the store's series, or null */
+	public QueryEngine(final SeriesStore store, final TagIndex index) {
+		this.store = store;
+		this.index = index;
+		this.reader = new SeriesReader(store);
+		this.timestamps = new long[reader.chunkPoints()];
+		this.values = new double[reader.chunkPoints()];
+	}
+
+	public QueryResult run(final Query query) {
+		final Downsampler downsampler = query.newDownsampler();
+		if (index != null) {
+			final PeekableIntIterator it = index.select(query).getIntIterator();
+			while (it.hasNext()) {
+				downsample(it.next(), downsampler);
+			}
+			return downsampler.result(query.getAggregator());
+		}
+
+		final int seriesCount = store.seriesCount();
+		for (int series = 0; series < seriesCount; series++) {
+			if (query.matches(store, series)) {
+				downsample(series, downsampler);
+			}
+		}
+		return downsampler.result(query.getAggregator());
+	}
+
+	/** Adds the points of the series that fall in the downsampler's range */
+	void downsample(final int series, final Downsampler downsampler) {
+		if (store.getMinTimestamp(series) >= downsampler.getEnd() || store.getMaxTimestamp(series) < downsampler.getStart()) {
+			return;
+		}
+		reader.reset(series);
+		int n;
+		while ((n = reader.next(timestamps, values)) > 0) {
+			downsampler.add(timestamps, values, n);
+		}
+	}
+}
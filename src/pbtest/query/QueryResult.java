@@ -0,0 +1,46 @@
+package pbtest.query;
+
+/**
+ * Downsampled result of a query: one value per non empty interval, in
+ * timestamp order.
+ */
+public final class QueryResult {
+
+	private final long[] timestamps;
+	private final double[] values;
+	private final long[] counts;
+
+	QueryResult(final long[] timestamps, final double[] values, final long[] counts) {
+		this.timestamps = timestamps;
+		this.values = values;
+		this.counts = counts;
+	}
+
+	/** @return number of intervals */
+	public int size() {
+		return timestamps.length;
+	}
+
+	/** @return start of the i-th interval */
+	public long getTimestamp(final int i) {
+		return timestamps[i];
+	}
+
+	public double getValue(final int i) {
+		return values[i];
+	}
+
+	/** @return number of points in the i-th interval */
+	public long getCount(final int i) {
+		return counts[i];
+	}
+
+	/** @return total number of points that matched the query */
+	public long getPointCount() {
+		long total = 0;
+		for (long count : counts) {
+			total += count;
+		}
+		return total;
+	}
+}
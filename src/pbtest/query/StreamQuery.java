@@ -0,0 +1,36 @@
+package pbtest.query;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import pbtest.io.DataPointCursor;
+import pbtest.io.RecordHandler;
+
+/**
+ * Runs a query over serialized records as they are read, without storing
+ * them. Pass it to any reader that takes a {@link RecordHandler}, then get the
+ * result with {@link #result()}.
+ */
+public final class StreamQuery implements RecordHandler {
+
+	private final Query query;
+	private final Downsampler downsampler;
+	private final DataPointCursor cursor = new DataPointCursor();
+
+	public StreamQuery(final Query query) {
+		this.query = query;
+		this.downsampler = query.newDownsampler();
+	}
+
+	@Override
+	public void handle(final ByteBuffer buf, final int offset, final int length) throws IOException {
+		cursor.wrap(buf, offset, length);
+		if (query.matches(cursor)) {
+			downsampler.add(cursor.getTimestamp(), cursor.hasFvalue() ? cursor.getFvalue() : cursor.getIvalue());
+		}
+	}
+
+	public QueryResult result() {
+		return downsampler.result(query.getAggregator());
+	}
+}
@@ -0,0 +1,143 @@
+package pbtest.simd;
+
+/**
+ * Aggregation kernels over primitive columns. Every kernel works on the
+ * elements [from, to) of its arrays.
+ * <p>
+ * {@link #get()} returns the kernels built on the Vector API when the
+ * {@code jdk.incubator.vector} module is available (run the JVM with
+ * {@code --add-modules jdk.incubator.vector}), and the scalar ones otherwise.
+ * Both give the same results, except for the rounding of floating point sums
+ * which are added in a different order. Sums of ints are computed as longs and
+ * sums of floats as doubles.
+ */
+public abstract class Kernels {
+
+	private static final Kernels INSTANCE = load();
+
+	/** @return the fastest kernels available */
+	public static Kernels get() {
+		return INSTANCE;
+	}
+
+	/** @return the scalar kernels, whatever the JVM supports */
+	public static Kernels scalar() {
+		return ScalarKernels.INSTANCE;
+	}
+
+	private static Kernels load() {
+		if (!Boolean.getBoolean("pbtest.simd.disable")) {
+			try {
+				return (Kernels) Class.forName("pbtest.simd.VectorKernels").getDeclaredField("INSTANCE").get(null);
+			} catch (ReflectiveOperationException | LinkageError e) {
+				// jdk.incubator.vector isn't there
+			}
+		}
+		return ScalarKernels.INSTANCE;
+	}
+
+	/** @return name of the implementation */
+	public abstract String getName();
+
+	public abstract long sum(int[] values, int from, int to);
+
+	public abstract long sum(long[] values, int from, int to);
+
+	public abstract double sum(float[] values, int from, int to);
+
+	public abstract double sum(double[] values, int from, int to);
+
+	/** @return the smallest value, the type's largest value (+Infinity for floats) if the range is empty */
+	public abstract int min(int[] values, int from, int to);
+
+	public abstract long min(long[] values, int from, int to);
+
+	public abstract float min(float[] values, int from, int to);
+
+	public abstract double min(double[] values, int from, int to);
+
+	/** @return the largest value, the type's smallest value (-Infinity for floats) if the range is empty */
+	public abstract int max(int[] values, int from, int to);
+
+	public abstract long max(long[] values, int from, int to);
+
+	public abstract float max(float[] values, int from, int to);
+
+	public abstract double max(double[] values, int from, int to);
+
+	/** @return number of values strictly greater than threshold */
+	public abstract int countAbove(int[] values, int from, int to, int threshold);
+
+	public abstract int countAbove(long[] values, int from, int to, long threshold);
+
+	public abstract int countAbove(float[] values, int from, int to, float threshold);
+
+	public abstract int countAbove(double[] values, int from, int to, double threshold);
+
+	/**
+	 * Adds every value to sums[(timestamp - start) / interval], values whose
+	 * timestamp falls outside of the buckets are ignored. Timestamps are
+	 * expected sorted: runs of consecutive points falling in the same bucket are
+	 * found with {@link #runEnd(long[], int, int, long, long)} and summed with
+	 * the sum kernel.
+	 */
+	public void sumBuckets(final long[] timestamps, final double[] values, final int from, final int to,
+			final long start, final long interval, final double[] sums) {
+		final long end = start + interval * sums.length;
+		int i = from;
+		while (i < to) {
+			final long timestamp = timestamps[i];
+			if (timestamp < start || timestamp >= end) {
+				i++;
+				continue;
+			}
+			final int b = (int) ((timestamp - start) / interval);
+			final long bucketStart = start + b * interval;
+			final int runEnd = runEnd(timestamps, i + 1, to, bucketStart, bucketStart + interval);
+			sums[b] += sum(values, i, runEnd);
+			i = runEnd;
+		}
+	}
+
+	/** Same as {@link #sumBuckets(long[], double[], int, int, long, long, double[])} for int values */
+	public void sumBuckets(final long[] timestamps, final int[] values, final int from, final int to,
+			final long start, final long interval, final long[] sums) {
+		final long end = start + interval * sums.length;
+		int i = from;
+		while (i < to) {
+			final long timestamp = timestamps[i];
+			if (timestamp < start || timestamp >= end) {
+				i++;
+				continue;
+			}
+			final int b = (int) ((timestamp - start) / interval);
+			final long bucketStart = start + b * interval;
+			final int runEnd = runEnd(timestamps, i + 1, to, bucketStart, bucketStart + interval);
+			sums[b] += sum(values, i, runEnd);
+			i = runEnd;
+		}
+	}
+
+	/** @return mean of the values, NaN if the range is empty */
+	public double mean(final int[] values, final int from, final int to) {
+		return (double) sum(values, from, to) / (to - from);
+	}
+
+	public double mean(final long[] values, final int from, final int to) {
+		return (double) sum(values, from, to) / (to - from);
+	}
+
+	public double mean(final float[] values, final int from, final int to) {
+		return sum(values, from, to) / (to - from);
+	}
+
+	public double mean(final double[] values, final int from, final int to) {
+		return sum(values, from, to) / (to - from);
+	}
+
+	/**
+	 * @return index of the first point at or after from whose timestamp is
+	 * outside of [bucketStart, bucketEnd), or to
+	 */
+	protected abstract int runEnd(long[] timestamps, int from, int to, long bucketStart, long bucketEnd);
+}
@@ -0,0 +1,176 @@
+package pbtest.simd;
+
+/**
+ * Plain loops, used when the Vector API isn't available and as the baseline of
+ * the benchmarks.
+ */
+final class ScalarKernels extends Kernels {
+
+	static final ScalarKernels INSTANCE = new ScalarKernels();
+
+	@Override
+	public String getName() {
+		return "scalar";
+	}
+
+	@Override
+	public long sum(final int[] values, final int from, final int to) {
+		long sum = 0;
+		for (int i = from; i < to; i++) {
+			sum += values[i];
+		}
+		return sum;
+	}
+
+	@Override
+	public long sum(final long[] values, final int from, final int to) {
+		long sum = 0;
+		for (int i = from; i < to; i++) {
+			sum += values[i];
+		}
+		return sum;
+	}
+
+	@Override
+	public double sum(final float[] values, final int from, final int to) {
+		double sum = 0;
+		for (int i = from; i < to; i++) {
+			sum += values[i];
+		}
+		return sum;
+	}
+
+	@Override
+	public double sum(final double[] values, final int from, final int to) {
+		double sum = 0;
+		for (int i = from; i < to; i++) {
+			sum += values[i];
+		}
+		return sum;
+	}
+
+	@Override
+	public int min(final int[] values, final int from, final int to) {
+		int min = Integer.MAX_VALUE;
+		for (int i = from; i < to; i++) {
+			min = Math.min(min, values[i]);
+		}
+		return min;
+	}
+
+	@Override
+	public long min(final long[] values, final int from, final int to) {
+		long min = Long.MAX_VALUE;
+		for (int i = from; i < to; i++) {
+			min = Math.min(min, values[i]);
+		}
+		return min;
+	}
+
+	@Override
+	public float min(final float[] values, final int from, final int to) {
+		float min = Float.POSITIVE_INFINITY;
+		for (int i = from; i < to; i++) {
+			min = Math.min(min, values[i]);
+		}
+		return min;
+	}
+
+	@Override
+	public double min(final double[] values, final int from, final int to) {
+		double min = Double.POSITIVE_INFINITY;
+		for (int i = from; i < to; i++) {
+			min = Math.min(min, values[i]);
+		}
+		return min;
+	}
+
+	@Override
+	public int max(final int[] values, final int from, final int to) {
+		int max = Integer.MIN_VALUE;
+		for (int i = from; i < to; i++) {
+			max = Math.max(max, values[i]);
+		}
+		return max;
+	}
+
+	@Override
+	public long max(final long[] values, final int from, final int to) {
+		long max = Long.MIN_VALUE;
+		for (int i = from; i < to; i++) {
+			max = Math.max(max, values[i]);
+		}
+		return max;
+	}
+
+	@Override
+	public float max(final float[] values, final int from, final int to) {
+		float max = Float.NEGATIVE_INFINITY;
+		for (int i = from; i < to; i++) {
+			max = Math.max(max, values[i]);
+		}
+		return max;
+	}
+
+	@Override
+	public double max(final double[] values, final int from, final int to) {
+		double max = Double.NEGATIVE_INFINITY;
+		for (int i = from; i < to; i++) {
+			max = Math.max(max, values[i]);
+		}
+		return max;
+	}
+
+	@Override
+	public int countAbove(final int[] values, final int from, final int to, final int threshold) {
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			if (values[i] > threshold) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public int countAbove(final long[] values, final int from, final int to, final long threshold) {
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			if (values[i] > threshold) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public int countAbove(final float[] values, final int from, final int to, final float threshold) {
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			if (values[i] > threshold) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public int countAbove(final double[] values, final int from, final int to, final double threshold) {
+		int count = 0;
+		for (int i = from; i < to; i++) {
+			if (values[i] > threshold) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	protected int runEnd(final long[] timestamps, final int from, final int to, final long bucketStart, final long bucketEnd) {
+		int i = from;
+		while (i < to && timestamps[i] >= bucketStart && timestamps[i] < bucketEnd) {
+			i++;
+		}
+		return i;
+	}
+}
@@ -0,0 +1,288 @@
+package pbtest.simd;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Kernels built on the incubating Vector API, with the platform's preferred
+ * vector size. Loops process whole vectors and finish the tail with scalar
+ * code. Ints and floats are widened to longs and doubles lane by lane before
+ * being added, so sums can't overflow and keep the precision of the scalar
+ * kernels.
+ * <p>
+ * Only loaded through {@link Kernels#get()}, which falls back to the scalar
+ * kernels if this class can't be linked.
+ */
+final class VectorKernels extends Kernels {
+
+	static final VectorKernels INSTANCE = new VectorKernels();
+
+	private static final VectorSpecies<Integer> INTS = IntVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Long> LONGS = LongVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+	private static final VectorSpecies<Double> DOUBLES = DoubleVector.SPECIES_PREFERRED;
+
+	@Override
+	public String getName() {
+		return "vector (" + DOUBLES.vectorBitSize() + " bits)";
+	}
+
+	@Override
+	public long sum(final int[] values, final int from, final int to) {
+		LongVector acc = LongVector.zero(LONGS);
+		int i = from;
+		for (final int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+			final IntVector v = IntVector.fromArray(INTS, values, i);
+			// an int vector widens into two long vectors
+			acc = acc.add((LongVector) v.convertShape(VectorOperators.I2L, LONGS, 0))
+					.add((LongVector) v.convertShape(VectorOperators.I2L, LONGS, 1));
+		}
+		long sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < to; i++) {
+			sum += values[i];
+		}
+		return sum;
+	}
+
+	@Override
+	public long sum(final long[] values, final int from, final int to) {
+		LongVector acc = LongVector.zero(LONGS);
+		int i = from;
+		for (final int bound = from + LONGS.loopBound(to - from); i < bound; i += LONGS.length()) {
+			acc = acc.add(LongVector.fromArray(LONGS, values, i));
+		}
+		long sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < to; i++) {
+			sum += values[i];
+		}
+		return sum;
+	}
+
+	@Override
+	public double sum(final float[] values, final int from, final int to) {
+		DoubleVector acc = DoubleVector.zero(DOUBLES);
+		int i = from;
+		for (final int bound = from + FLOATS.loopBound(to - from); i < bound; i += FLOATS.length()) {
+			final FloatVector v = FloatVector.fromArray(FLOATS, values, i);
+			acc = acc.add((DoubleVector) v.convertShape(VectorOperators.F2D, DOUBLES, 0))
+					.add((DoubleVector) v.convertShape(VectorOperators.F2D, DOUBLES, 1));
+		}
+		double sum = acc.reduceLanes(VectorOperators.ADD);
+		for (; i < to; i++) {
+			sum += values[i];
+		}
+		return sum;
+	}
+
+	@Override
+	public double sum(final double[] values, final int from, final int to) {
+		// two accumulators hide the latency of the additions
+		DoubleVector acc0 = DoubleVector.zero(DOUBLES);
+		DoubleVector acc1 = DoubleVector.zero(DOUBLES);
+		final int step = 2 * DOUBLES.length();
+		int i = from;
+		for (final int bound = to - step; i <= bound; i += step) {
+			acc0 = acc0.add(DoubleVector.fromArray(DOUBLES, values, i));
+			acc1 = acc1.add(DoubleVector.fromArray(DOUBLES, values, i + DOUBLES.length()));
+		}
+		double sum = acc0.add(acc1).reduceLanes(VectorOperators.ADD);
+		for (; i < to; i++) {
+			sum += values[i];
+		}
+		return sum;
+	}
+
+	@Override
+	public int min(final int[] values, final int from, final int to) {
+		IntVector acc = IntVector.broadcast(INTS, Integer.MAX_VALUE);
+		int i = from;
+		for (final int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+			acc = acc.min(IntVector.fromArray(INTS, values, i));
+		}
+		int min = acc.reduceLanes(VectorOperators.MIN);
+		for (; i < to; i++) {
+			min = Math.min(min, values[i]);
+		}
+		return min;
+	}
+
+	@Override
+	public long min(final long[] values, final int from, final int to) {
+		LongVector acc = LongVector.broadcast(LONGS, Long.MAX_VALUE);
+		int i = from;
+		for (final int bound = from + LONGS.loopBound(to - from); i < bound; i += LONGS.length()) {
+			acc = acc.min(LongVector.fromArray(LONGS, values, i));
+		}
+		long min = acc.reduceLanes(VectorOperators.MIN);
+		for (; i < to; i++) {
+			min = Math.min(min, values[i]);
+		}
+		return min;
+	}
+
+	@Override
+	public float min(final float[] values, final int from, final int to) {
+		FloatVector acc = FloatVector.broadcast(FLOATS, Float.POSITIVE_INFINITY);
+		int i = from;
+		for (final int bound = from + FLOATS.loopBound(to - from); i < bound; i += FLOATS.length()) {
+			acc = acc.min(FloatVector.fromArray(FLOATS, values, i));
+		}
+		float min = acc.reduceLanes(VectorOperators.MIN);
+		for (; i < to; i++) {
+			min = Math.min(min, values[i]);
+		}
+		return min;
+	}
+
+	@Override
+	public double min(final double[] values, final int from, final int to) {
+		DoubleVector acc = DoubleVector.broadcast(DOUBLES, Double.POSITIVE_INFINITY);
+		int i = from;
+		for (final int bound = from + DOUBLES.loopBound(to - from); i < bound; i += DOUBLES.length()) {
+			acc = acc.min(DoubleVector.fromArray(DOUBLES, values, i));
+		}
+		double min = acc.reduceLanes(VectorOperators.MIN);
+		for (; i < to; i++) {
+			min = Math.min(min, values[i]);
+		}
+		return min;
+	}
+
+	@Override
+	public int max(final int[] values, final int from, final int to) {
+		IntVector acc = IntVector.broadcast(INTS, Integer.MIN_VALUE);
+		int i = from;
+		for (final int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+			acc = acc.max(IntVector.fromArray(INTS, values, i));
+		}
+		int max = acc.reduceLanes(VectorOperators.MAX);
+		for (; i < to; i++) {
+			max = Math.max(max, values[i]);
+		}
+		return max;
+	}
+
+	@Override
+	public long max(final long[] values, final int from, final int to) {
+		LongVector acc = LongVector.broadcast(LONGS, Long.MIN_VALUE);
+		int i = from;
+		for (final int bound = from + LONGS.loopBound(to - from); i < bound; i += LONGS.length()) {
+			acc = acc.max(LongVector.fromArray(LONGS, values, i));
+		}
+		long max = acc.reduceLanes(VectorOperators.MAX);
+		for (; i < to; i++) {
+			max = Math.max(max, values[i]);
+		}
+		return max;
+	}
+
+	@Override
+	public float max(final float[] values, final int from, final int to) {
+		FloatVector acc = FloatVector.broadcast(FLOATS, Float.NEGATIVE_INFINITY);
+		int i = from;
+		for (final int bound = from + FLOATS.loopBound(to - from); i < bound; i += FLOATS.length()) {
+			acc = acc.max(FloatVector.fromArray(FLOATS, values, i));
+		}
+		float max = acc.reduceLanes(VectorOperators.MAX);
+		for (; i < to; i++) {
+			max = Math.max(max, values[i]);
+		}
+		return max;
+	}
+
+	@Override
+	public double max(final double[] values, final int from, final int to) {
+		DoubleVector acc = DoubleVector.broadcast(DOUBLES, Double.NEGATIVE_INFINITY);
+		int i = from;
+		for (final int bound = from + DOUBLES.loopBound(to - from); i < bound; i += DOUBLES.length()) {
+			acc = acc.max(DoubleVector.fromArray(DOUBLES, values, i));
+		}
+		double max = acc.reduceLanes(VectorOperators.MAX);
+		for (; i < to; i++) {
+			max = Math.max(max, values[i]);
+		}
+		return max;
+	}
+
+	@Override
+	public int countAbove(final int[] values, final int from, final int to, final int threshold) {
+		int count = 0;
+		int i = from;
+		for (final int bound = from + INTS.loopBound(to - from); i < bound; i += INTS.length()) {
+			count += IntVector.fromArray(INTS, values, i).compare(VectorOperators.GT, threshold).trueCount();
+		}
+		for (; i < to; i++) {
+			if (values[i] > threshold) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public int countAbove(final long[] values, final int from, final int to, final long threshold) {
+		int count = 0;
+		int i = from;
+		for (final int bound = from + LONGS.loopBound(to - from); i < bound; i += LONGS.length()) {
+			count += LongVector.fromArray(LONGS, values, i).compare(VectorOperators.GT, threshold).trueCount();
+		}
+		for (; i < to; i++) {
+			if (values[i] > threshold) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public int countAbove(final float[] values, final int from, final int to, final float threshold) {
+		int count = 0;
+		int i = from;
+		for (final int bound = from + FLOATS.loopBound(to - from); i < bound; i += FLOATS.length()) {
+			count += FloatVector.fromArray(FLOATS, values, i).compare(VectorOperators.GT, threshold).trueCount();
+		}
+		for (; i < to; i++) {
+			if (values[i] > threshold) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	public int countAbove(final double[] values, final int from, final int to, final double threshold) {
+		int count = 0;
+		int i = from;
+		for (final int bound = from + DOUBLES.loopBound(to - from); i < bound; i += DOUBLES.length()) {
+			count += DoubleVector.fromArray(DOUBLES, values, i).compare(VectorOperators.GT, threshold).trueCount();
+		}
+		for (; i < to; i++) {
+			if (values[i] > threshold) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	@Override
+	protected int runEnd(final long[] timestamps, final int from, final int to, final long bucketStart, final long bucketEnd) {
+		int i = from;
+		for (final int bound = from + LONGS.loopBound(to - from); i < bound; i += LONGS.length()) {
+			final LongVector v = LongVector.fromArray(LONGS, timestamps, i);
+			final VectorMask<Long> outside = v.compare(VectorOperators.LT, bucketStart)
+					.or(v.compare(VectorOperators.GE, bucketEnd));
+			if (outside.anyTrue()) {
+				return i + outside.firstTrue();
+			}
+		}
+		while (i < to && timestamps[i] >= bucketStart && timestamps[i] < bucketEnd) {
+			i++;
+		}
+		return i;
+	}
+}
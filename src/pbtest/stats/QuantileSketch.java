@@ -0,0 +1,228 @@
+package pbtest.stats;
+
+/**
+ * Mergeable quantile sketch with a relative error guarantee, after DDSketch
+ * (Masson et al., VLDB 2019). Positive values are counted in logarithmic bins
+ * of index ceil(log_gamma(v)), with gamma = (1 + a) / (1 - a) for a relative
+ * accuracy a: any quantile is then returned within a relative error of a of
+ * the value of that rank. Negative values are binned the same way by their
+ * magnitude, zeros (and values too close to zero to be indexed) are counted
+ * apart.
+ * <p>
+ * Each sign keeps at most {@code maxBins} contiguous bins. When the values
+ * span more, the bins of the smallest magnitudes are collapsed into one and
+ * lose their accuracy, which takes a range of 1e-6 to 1e12 with the default
+ * settings. Two sketches with the same settings merge by adding their bins,
+ * the result is the same as if all the values had been added to a single
+ * sketch. Instances are not thread safe.
+ */
+public final class QuantileSketch {
+
+	public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+
+	public static final int DEFAULT_MAX_BINS = 2048;
+
+	/** Smallest magnitude with an index, smaller ones are counted as zeros */
+	private static final double MIN_INDEXABLE = Double.MIN_NORMAL;
+
+	private final double relativeAccuracy;
+	private final double gamma;
+	/** 1 / ln(gamma) */
+	private final double multiplier;
+	private final int maxBins;
+
+	private final Bins positives;
+	private final Bins negatives;
+	private long zeroCount;
+
+	public QuantileSketch() {
+		this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MAX_BINS);
+	}
+
+	/**
+	 * @param relativeAccuracy relative error of the quantiles, in (0, 1)
+	 * @param maxBins largest number of bins for each sign
+	 */
+	public QuantileSketch(final double relativeAccuracy, final int maxBins) {
+		if (!(relativeAccuracy > 0 && relativeAccuracy < 1)) {
+			throw new IllegalArgumentException("invalid relative accuracy: " + relativeAccuracy);
+		}
+		if (maxBins <= 0) {
+			throw new IllegalArgumentException("invalid number of bins: " + maxBins);
+		}
+		this.relativeAccuracy = relativeAccuracy;
+		this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+		this.multiplier = 1 / Math.log(gamma);
+		this.maxBins = maxBins;
+		this.positives = new Bins(maxBins);
+		this.negatives = new Bins(maxBins);
+	}
+
+	public double getRelativeAccuracy() {
+		return relativeAccuracy;
+	}
+
+	public long getCount() {
+		return positives.total + negatives.total + zeroCount;
+	}
+
+	/** @throws IllegalArgumentException if value is NaN or infinite */
+	public void add(final double value) {
+		if (value >= MIN_INDEXABLE) {
+			positives.add(index(value), 1);
+		} else if (value <= -MIN_INDEXABLE) {
+			negatives.add(index(-value), 1);
+		} else if (value == value) {
+			zeroCount++;
+		} else {
+			throw new IllegalArgumentException("can't add NaN to a sketch");
+		}
+	}
+
+	private int index(final double magnitude) {
+		if (magnitude == Double.POSITIVE_INFINITY) {
+			throw new IllegalArgumentException("can't add an infinite value to a sketch");
+		}
+		return (int) Math.ceil(Math.log(magnitude) * multiplier);
+	}
+
+	/** @return the value that best represents the bin of the given index */
+	private double value(final int index) {
+		return 2 * Math.pow(gamma, index) / (gamma + 1);
+	}
+
+	/**
+	 * Adds the bins of other into this sketch.
+	 * @throws IllegalArgumentException if the sketches have different settings
+	 */
+	public QuantileSketch merge(final QuantileSketch other) {
+		if (other.gamma != gamma || other.maxBins != maxBins) {
+			throw new IllegalArgumentException("can't merge sketches with different settings");
+		}
+		positives.merge(other.positives);
+		negatives.merge(other.negatives);
+		zeroCount += other.zeroCount;
+		return this;
+	}
+
+	/**
+	 * @param quantile in [0, 1]
+	 * @return estimate of the value of rank quantile * (count - 1), NaN if the
+	 * sketch is empty
+	 */
+	public double getQuantile(final double quantile) {
+		if (!(quantile >= 0 && quantile <= 1)) {
+			throw new IllegalArgumentException("invalid quantile: " + quantile);
+		}
+		final long count = getCount();
+		if (count == 0) {
+			return Double.NaN;
+		}
+
+		final long rank = (long) (quantile * (count - 1));
+		long n = 0;
+		// largest magnitudes of the negatives come first
+		if (negatives.total > 0) {
+			for (int i = negatives.maxIndex; i >= negatives.minIndex; i--) {
+				n += negatives.get(i);
+				if (n > rank) {
+					return -value(i);
+				}
+			}
+		}
+		n += zeroCount;
+		if (n > rank) {
+			return 0;
+		}
+		for (int i = positives.minIndex; i < positives.maxIndex; i++) {
+			n += positives.get(i);
+			if (n > rank) {
+				return value(i);
+			}
+		}
+		return value(positives.maxIndex);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d, p50=%.4g, p90=%.4g, p99=%.4g, p999=%.4g", getCount(),
+				getQuantile(0.5), getQuantile(0.9), getQuantile(0.99), getQuantile(0.999));
+	}
+
+	/** Counts of a contiguous range of bin indices, grown on demand */
+	private static final class Bins {
+		private final int maxBins;
+
+		private long[] counts = new long[0];
+		/** index of counts[0] */
+		private int offset;
+		private int minIndex;
+		private int maxIndex;
+		private long total;
+
+		Bins(final int maxBins) {
+			this.maxBins = maxBins;
+		}
+
+		long get(final int index) {
+			return counts[index - offset];
+		}
+
+		void add(int index, final long n) {
+			if (total == 0) {
+				resize(index, index);
+			} else if (index < minIndex || index > maxIndex) {
+				int lo = Math.min(index, minIndex);
+				final int hi = Math.max(index, maxIndex);
+				long folded = 0;
+				if (hi - lo >= maxBins) {
+					// collapse the lowest bins
+					lo = hi - maxBins + 1;
+					for (int i = minIndex; i < lo && i <= maxIndex; i++) {
+						folded += counts[i - offset];
+						counts[i - offset] = 0;
+					}
+					index = Math.max(index, lo);
+				}
+				resize(lo, hi);
+				counts[lo - offset] += folded;
+			}
+			counts[index - offset] += n;
+			total += n;
+		}
+
+		/** Makes [lo, hi] the range of the bins, bins of the previous range out of it must be empty */
+		private void resize(final int lo, final int hi) {
+			if (lo < offset || hi >= offset + counts.length) {
+				final int length = hi - lo + 1;
+				final long[] grown = new long[Math.min(maxBins, Math.max(64, Math.max(length * 2, counts.length * 2)))];
+				final int grownOffset = lo - (grown.length - length) / 2;
+				if (total > 0) {
+					final int from = Math.max(minIndex, lo);
+					final int to = Math.min(maxIndex, hi);
+					if (from <= to) {
+						System.arraycopy(counts, from - offset, grown, from - grownOffset, to - from + 1);
+					}
+				}
+				counts = grown;
+				offset = grownOffset;
+			}
+			minIndex = lo;
+			maxIndex = hi;
+		}
+
+		void merge(final Bins other) {
+			if (other.total == 0) {
+				return;
+			}
+			// highest index first, so that the lowest bins of other are the ones collapsed
+			add(other.maxIndex, other.get(other.maxIndex));
+			for (int i = other.maxIndex - 1; i >= other.minIndex; i--) {
+				final long n = other.get(i);
+				if (n != 0) {
+					add(i, n);
+				}
+			}
+		}
+	}
+}
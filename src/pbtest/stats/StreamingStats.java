@@ -0,0 +1,137 @@
+package pbtest.stats;
+
+/**
+ * Statistics of a stream of values computed in a single pass: count, min, max,
+ * mean and variance, along with approximate quantiles from a
+ * {@link QuantileSketch}. The mean and variance are updated with Welford's
+ * algorithm, which doesn't lose precision when the mean is large compared to
+ * the spread of the values.
+ * <p>
+ * Each thread is expected to fill its own instance, the partial results are
+ * then combined with {@link #merge(StreamingStats)} (Chan et al.'s pairwise
+ * update), in time independent of the number of values.
+ * <p>
+ * NaN and infinite values are not part of the statistics, they are only
+ * counted, see {@link #getNonFiniteCount()}.
+ */
+public final class StreamingStats {
+
+	private long count;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+	private double mean;
+	/** sum of the squared differences to the mean */
+	private double m2;
+	private long nonFinite;
+
+	private final QuantileSketch sketch;
+
+	public StreamingStats() {
+		this(new QuantileSketch());
+	}
+
+	/** @param sketch empty sketch collecting the quantiles */
+	public StreamingStats(final QuantileSketch sketch) {
+		this.sketch = sketch;
+	}
+
+	public void add(final double value) {
+		if (!Double.isFinite(value)) {
+			nonFinite++;
+			return;
+		}
+		sketch.add(value);
+		count++;
+		final double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+		if (value < min) {
+			min = value;
+		}
+		if (value > max) {
+			max = value;
+		}
+	}
+
+	/** Adds the results of other into this instance */
+	public StreamingStats merge(final StreamingStats other) {
+		nonFinite += other.nonFinite;
+		if (other.count == 0) {
+			return this;
+		}
+		sketch.merge(other.sketch);
+		final long n = count + other.count;
+		final double delta = other.mean - mean;
+		mean += delta * other.count / n;
+		m2 += other.m2 + delta * delta * ((double) count * other.count / n);
+		count = n;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		return this;
+	}
+
+	/** @return number of finite values added */
+	public long getCount() {
+		return count;
+	}
+
+	/** @return number of NaN and infinite values, skipped by the statistics */
+	public long getNonFiniteCount() {
+		return nonFinite;
+	}
+
+	/** @return smallest value, +Infinity if there is none */
+	public double getMin() {
+		return min;
+	}
+
+	/** @return largest value, -Infinity if there is none */
+	public double getMax() {
+		return max;
+	}
+
+	/** @return mean of the values, NaN if there is none */
+	public double getMean() {
+		return count == 0 ? Double.NaN : mean;
+	}
+
+	/** @return population variance of the values, NaN if there is none */
+	public double getVariance() {
+		return count == 0 ? Double.NaN : m2 / count;
+	}
+
+	/** @return sample variance of the values, NaN if there are less than 2 */
+	public double getSampleVariance() {
+		return count < 2 ? Double.NaN : m2 / (count - 1);
+	}
+
+	public double getStandardDeviation() {
+		return Math.sqrt(getVariance());
+	}
+
+	/**
+	 * @return estimate of the given quantile, within the relative accuracy of
+	 * the sketch and bounded by the exact min and max
+	 * @see QuantileSketch#getQuantile(double)
+	 */
+	public double getQuantile(final double quantile) {
+		if (quantile == 0) {
+			return count == 0 ? Double.NaN : min;
+		} else if (quantile == 1) {
+			return count == 0 ? Double.NaN : max;
+		}
+		return Math.max(min, Math.min(max, sketch.getQuantile(quantile)));
+	}
+
+	public QuantileSketch getSketch() {
+		return sketch;
+	}
+
+	@Override
+	public String toString() {
+		final String s = String.format("count=%d, min=%.4g, max=%.4g, mean=%.4g, stddev=%.4g, p50=%.4g, p90=%.4g, p99=%.4g, p999=%.4g",
+				count, min, max, getMean(), getStandardDeviation(),
+				getQuantile(0.5), getQuantile(0.9), getQuantile(0.99), getQuantile(0.999));
+		return nonFinite == 0 ? s : s + ", nonfinite=" + nonFinite;
+	}
+}
@@ -0,0 +1,9 @@
+package pbtest.store;
+
+/**
+ * Callback invoked for every point of a series read from a {@link SeriesStore}.
+ */
+public interface PointHandler {
+
+	void point(long timestamp, double value);
+}
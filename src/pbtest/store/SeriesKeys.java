@@ -0,0 +1,163 @@
+package pbtest.store;
+
+import java.util.Arrays;
+
+/**
+ * Interns series keys, a metric id and a set of (tag key id, tag value id)
+ * pairs, into dense series ids. Keys are stored in a single int array and
+ * looked up through an open addressing hash table, so neither a lookup nor an
+ * insert allocates anything per point.
+ * <p>
+ * Tags are expected sorted by key id, see {@link #sortTags(int[], int[], int)}.
+ */
+final class SeriesKeys {
+
+	/** keys of series s are at keys[starts[s]]: metricId, tagCount, then tagCount (key, value) pairs */
+	private int[] keys = new int[1024];
+	private int keysSize;
+	private int[] starts = new int[256];
+	private int size;
+
+	/** series id + 1 in each slot, 0 for an empty slot */
+	private int[] table = new int[1024];
+
+	int size() {
+		return size;
+	}
+
+	int getMetricId(final int series) {
+		return keys[starts[series]];
+	}
+
+	int getTagCount(final int series) {
+		return keys[starts[series] + 1];
+	}
+
+	int getTagKeyId(final int series, final int i) {
+		return keys[starts[series] + 2 + 2 * i];
+	}
+
+	int getTagValueId(final int series, final int i) {
+		return keys[starts[series] + 3 + 2 * i];
+	}
+
+	/** @return id of the series, or -1 if it wasn't added */
+	int find(final int metricId, final int[] tagKeys, final int[] tagValues, final int tagCount) {
+		final int mask = table.length - 1;
+		for (int slot = hash(metricId, tagKeys, tagValues, tagCount) & mask;; slot = (slot + 1) & mask) {
+			final int series = table[slot] - 1;
+			if (series < 0) {
+				return -1;
+			}
+			if (matches(series, metricId, tagKeys, tagValues, tagCount)) {
+				return series;
+			}
+		}
+	}
+
+	/** @return id of the series, added if needed */
+	int intern(final int metricId, final int[] tagKeys, final int[] tagValues, final int tagCount) {
+		int mask = table.length - 1;
+		final int hash = hash(metricId, tagKeys, tagValues, tagCount);
+		int slot = hash & mask;
+		for (;; slot = (slot + 1) & mask) {
+			final int series = table[slot] - 1;
+			if (series < 0) {
+				break;
+			}
+			if (matches(series, metricId, tagKeys, tagValues, tagCount)) {
+				return series;
+			}
+		}
+
+		final int series = size++;
+		if (series == starts.length) {
+			starts = Arrays.copyOf(starts, series * 2);
+		}
+		final int length = 2 + 2 * tagCount;
+		if (keysSize + length > keys.length) {
+			keys = Arrays.copyOf(keys, Math.max(keys.length * 2, keysSize + length));
+		}
+		starts[series] = keysSize;
+		keys[keysSize++] = metricId;
+		keys[keysSize++] = tagCount;
+		for (int i = 0; i < tagCount; i++) {
+			keys[keysSize++] = tagKeys[i];
+			keys[keysSize++] = tagValues[i];
+		}
+
+		table[slot] = series + 1;
+		// keep the load factor under 1/2
+		if (size * 2 > table.length) {
+			rehash();
+		}
+		return series;
+	}
+
+	private boolean matches(final int series, final int metricId, final int[] tagKeys, final int[] tagValues, final int tagCount) {
+		int idx = starts[series];
+		if (keys[idx++] != metricId || keys[idx++] != tagCount) {
+			return false;
+		}
+		for (int i = 0; i < tagCount; i++) {
+			if (keys[idx++] != tagKeys[i] || keys[idx++] != tagValues[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void rehash() {
+		table = new int[table.length * 2];
+		final int mask = table.length - 1;
+		for (int series = 0; series < size; series++) {
+			final int idx = starts[series];
+			final int tagCount = keys[idx + 1];
+			int h = mix(keys[idx]);
+			for (int i = 0; i < tagCount; i++) {
+				h = mix(h * 31 + keys[idx + 2 + 2 * i]);
+				h = mix(h * 31 + keys[idx + 3 + 2 * i]);
+			}
+			int slot = h & mask;
+			while (table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			table[slot] = series + 1;
+		}
+	}
+
+	private static int hash(final int metricId, final int[] tagKeys, final int[] tagValues, final int tagCount) {
+		int h = mix(metricId);
+		for (int i = 0; i < tagCount; i++) {
+			h = mix(h * 31 + tagKeys[i]);
+			h = mix(h * 31 + tagValues[i]);
+		}
+		return h;
+	}
+
+	/** murmur3's finalizer */
+	private static int mix(int h) {
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/** Sorts the first tagCount tags by key id, in place. Tag sets are small, this is an insertion sort. */
+	static void sortTags(final int[] tagKeys, final int[] tagValues, final int tagCount) {
+		for (int i = 1; i < tagCount; i++) {
+			final int key = tagKeys[i];
+			final int value = tagValues[i];
+			int j = i - 1;
+			while (j >= 0 && tagKeys[j] > key) {
+				tagKeys[j + 1] = tagKeys[j];
+				tagValues[j + 1] = tagValues[j];
+				j--;
+			}
+			tagKeys[j + 1] = key;
+			tagValues[j + 1] = value;
+		}
+	}
+}
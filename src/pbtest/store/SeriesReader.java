@@ -0,0 +1,43 @@
+package pbtest.store;
+
+/**
+ * Reads the points of a series one chunk at a time into primitive arrays. A
+ * reader can be reused for several series with {@link #reset(int)}.
+ */
+public final class SeriesReader {
+
+	private final SeriesStore store;
+	private int series;
+	private int chunk;
+
+	public SeriesReader(final SeriesStore store) {
+		this.store = store;
+		this.chunk = -1;
+	}
+
+	/** Moves the reader to the first chunk of the series */
+	public SeriesReader reset(final int series) {
+		this.series = series;
+		this.chunk = store.firstChunk(series);
+		return this;
+	}
+
+	/** @return size the arrays passed to {@link #next(long[], double[])} must have */
+	public int chunkPoints() {
+		return store.chunkPoints();
+	}
+
+	/**
+	 * Copies the points of the next chunk.
+	 * @return number of points copied, 0 once all chunks were read
+	 */
+	public int next(final long[] timestamps, final double[] values) {
+		if (chunk < 0) {
+			return 0;
+		}
+		final int count = store.chunkSize(series, chunk);
+		store.readChunk(chunk, count, timestamps, values);
+		chunk = store.nextChunk(chunk);
+		return count;
+	}
+}
@@ -0,0 +1,281 @@
+package pbtest.store;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+
+import pbtest.io.DataPointCursor;
+
+/**
+ * In-memory time series store keeping the points off the Java heap. A series
+ * is a metric id plus a set of tags, each series is assigned a dense id in
+ * order of appearance.
+ * <p>
+ * Points are appended to fixed size chunks carved out of large direct
+ * buffers, so the heap only holds a few ints per series and per chunk
+ * regardless of the number of points, and the collector never scans or copies
+ * them. A chunk holds {@code chunkPoints} timestamps followed by as many
+ * values, stored as doubles so that both ivalues and fvalues are exact. The
+ * chunks of a series are linked in insertion order.
+ * <p>
+ * Points are kept in insertion order, which is timestamp order for files
+ * written by {@code GenerateData}. A store must only be written by a single
+ * thread, and read once written.
+ * <p>
+ * Direct memory is capped by {@code -XX:MaxDirectMemorySize}, which defaults
+ * to the heap size. It must be raised to hold more than a heap's worth of
+ * points.
+ */
+public final class SeriesStore {
+
+	public static final int DEFAULT_CHUNK_POINTS = 128;
+
+	/** Largest direct buffer allocated at once */
+	private static final int MAX_PAGE_SIZE = 1 << 26;
+
+	private final int chunkPoints;
+	private final int chunkSize;
+	private final int chunksPerPage;
+
+	private ByteBuffer[] pages = new ByteBuffer[16];
+	/** views of the pages used for bulk reads */
+	private LongBuffer[] longPages = new LongBuffer[16];
+	private DoubleBuffer[] doublePages = new DoubleBuffer[16];
+	private int numChunks;
+	/** next chunk of each chunk, -1 for the last one of a series */
+	private int[] nextChunk = new int[1024];
+
+	private final SeriesKeys keys = new SeriesKeys();
+	private int[] firstChunk = new int[256];
+	private int[] lastChunk = new int[256];
+	private int[] lastChunkSize = new int[256];
+	private long[] pointCounts = new long[256];
+	private long[] minTimestamps = new long[256];
+	private long[] maxTimestamps = new long[256];
+	private long size;
+
+	/** scratch space holding the sorted tags of the point being added */
+	private int[] tagKeys = new int[8];
+	private int[] tagValues = new int[8];
+
+	public SeriesStore() {
+		this(DEFAULT_CHUNK_POINTS);
+	}
+
+	/**
+	 * @param chunkPoints points per chunk, every series takes at least one
+	 * chunk of 16 * chunkPoints bytes
+	 */
+	public SeriesStore(final int chunkPoints) {
+		if (chunkPoints <= 0 || chunkPoints > MAX_PAGE_SIZE / 16) {
+			throw new IllegalArgumentException("invalid chunk size: " + chunkPoints + " points");
+		}
+		this.chunkPoints = chunkPoints;
+		this.chunkSize = 16 * chunkPoints;
+		this.chunksPerPage = MAX_PAGE_SIZE / chunkSize;
+	}
+
+	/**
+	 * Adds the data point currently decoded by the cursor.
+	 * @return id of its series
+	 */
+	public int add(final DataPointCursor dp) {
+		final int tagCount = dp.getTagCount();
+		if (tagCount > tagKeys.length) {
+			tagKeys = new int[tagCount];
+			tagValues = new int[tagCount];
+		}
+		for (int i = 0; i < tagCount; i++) {
+			tagKeys[i] = dp.getTagKeyId(i);
+			tagValues[i] = dp.getTagValueId(i);
+		}
+		final double value = dp.hasFvalue() ? dp.getFvalue() : dp.getIvalue();
+		return add(dp.getMetricId(), tagKeys, tagValues, tagCount, dp.getTimestamp(), value);
+	}
+
+	/**
+	 * Adds a point. The tags are sorted by key id in place.
+	 * @return id of its series
+	 */
+	public int add(final int metricId, final int[] tagKeys, final int[] tagValues, final int tagCount,
+			final long timestamp, final double value) {
+		SeriesKeys.sortTags(tagKeys, tagValues, tagCount);
+		final int series = keys.intern(metricId, tagKeys, tagValues, tagCount);
+		if (series == pointCounts.length) {
+			growSeries(series * 2);
+		}
+
+		int chunk;
+		int idx;
+		if (pointCounts[series] == 0) {
+			chunk = allocateChunk();
+			firstChunk[series] = chunk;
+			lastChunk[series] = chunk;
+			minTimestamps[series] = timestamp;
+			maxTimestamps[series] = timestamp;
+			idx = 0;
+		} else {
+			chunk = lastChunk[series];
+			idx = lastChunkSize[series];
+			if (idx == chunkPoints) {
+				final int next = allocateChunk();
+				nextChunk[chunk] = next;
+				lastChunk[series] = next;
+				chunk = next;
+				idx = 0;
+			}
+			minTimestamps[series] = Math.min(minTimestamps[series], timestamp);
+			maxTimestamps[series] = Math.max(maxTimestamps[series], timestamp);
+		}
+
+		final ByteBuffer page = pages[chunk / chunksPerPage];
+		final int offset = (chunk % chunksPerPage) * chunkSize;
+		page.putLong(offset + 8 * idx, timestamp);
+		page.putDouble(offset + 8 * (chunkPoints + idx), value);
+		lastChunkSize[series] = idx + 1;
+		pointCounts[series]++;
+		size++;
+		return series;
+	}
+
+	private int allocateChunk() {
+		final int chunk = numChunks++;
+		final int page = chunk / chunksPerPage;
+		if (page == pages.length) {
+			pages = Arrays.copyOf(pages, page * 2);
+			longPages = Arrays.copyOf(longPages, page * 2);
+			doublePages = Arrays.copyOf(doublePages, page * 2);
+		}
+		if (pages[page] == null) {
+			pages[page] = ByteBuffer.allocateDirect(chunksPerPage * chunkSize).order(ByteOrder.nativeOrder());
+			longPages[page] = pages[page].asLongBuffer();
+			doublePages[page] = pages[page].asDoubleBuffer();
+		}
+		if (chunk == nextChunk.length) {
+			nextChunk = Arrays.copyOf(nextChunk, chunk * 2);
+		}
+		nextChunk[chunk] = -1;
+		return chunk;
+	}
+
+	private void growSeries(final int capacity) {
+		firstChunk = Arrays.copyOf(firstChunk, capacity);
+		lastChunk = Arrays.copyOf(lastChunk, capacity);
+		lastChunkSize = Arrays.copyOf(lastChunkSize, capacity);
+		pointCounts = Arrays.copyOf(pointCounts, capacity);
+		minTimestamps = Arrays.copyOf(minTimestamps, capacity);
+		maxTimestamps = Arrays.copyOf(maxTimestamps, capacity);
+	}
+
+	/** @return total number of points */
+	public long size() {
+		return size;
+	}
+
+	/** @return number of series */
+	public int seriesCount() {
+		return keys.size();
+	}
+
+	/** @return bytes held off-heap */
+	public long offHeapSize() {
+		long bytes = 0;
+		for (ByteBuffer page : pages) {
+			if (page != null) {
+				bytes += page.capacity();
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Finds a series, tagKeys and tagValues are sorted by key id in place.
+	 * @return id of the series, or -1 if the store has no such series
+	 */
+	public int findSeries(final int metricId, final int[] tagKeys, final int[] tagValues, final int tagCount) {
+		SeriesKeys.sortTags(tagKeys, tagValues, tagCount);
+		return keys.find(metricId, tagKeys, tagValues, tagCount);
+	}
+
+	public int getMetricId(final int series) {
+		return keys.getMetricId(series);
+	}
+
+	public int getTagCount(final int series) {
+		return keys.getTagCount(series);
+	}
+
+	/** @return key id of the i-th tag of the series, tags are sorted by key id */
+	public int getTagKeyId(final int series, final int i) {
+		return keys.getTagKeyId(series, i);
+	}
+
+	public int getTagValueId(final int series, final int i) {
+		return keys.getTagValueId(series, i);
+	}
+
+	public long getPointCount(final int series) {
+		return pointCounts[series];
+	}
+
+	public long getMinTimestamp(final int series) {
+		return minTimestamps[series];
+	}
+
+	public long getMaxTimestamp(final int series) {
+		return maxTimestamps[series];
+	}
+
+	/** @return a reader positioned on the first chunk of the series */
+	public SeriesReader reader(final int series) {
+		return new SeriesReader(this).reset(series);
+	}
+
+	/**
+	 * Passes the points of the series with a timestamp in [start, end) to the
+	 * handler, in insertion order.
+	 */
+	public void scan(final int series, final long start, final long end, final PointHandler handler) {
+		if (minTimestamps[series] >= end || maxTimestamps[series] < start) {
+			return;
+		}
+		for (int chunk = firstChunk[series]; chunk >= 0; chunk = nextChunk[chunk]) {
+			final ByteBuffer page = pages[chunk / chunksPerPage];
+			final int offset = (chunk % chunksPerPage) * chunkSize;
+			final int count = chunkSize(series, chunk);
+			for (int i = 0; i < count; i++) {
+				final long timestamp = page.getLong(offset + 8 * i);
+				if (timestamp >= start && timestamp < end) {
+					handler.point(timestamp, page.getDouble(offset + 8 * (chunkPoints + i)));
+				}
+			}
+		}
+	}
+
+	int chunkPoints() {
+		return chunkPoints;
+	}
+
+	int firstChunk(final int series) {
+		return pointCounts[series] > 0 ? firstChunk[series] : -1;
+	}
+
+	int nextChunk(final int chunk) {
+		return nextChunk[chunk];
+	}
+
+	/** @return number of points in the chunk, which belongs to the series */
+	int chunkSize(final int series, final int chunk) {
+		return (chunk == lastChunk[series]) ? lastChunkSize[series] : chunkPoints;
+	}
+
+	/** Copies the count first points of the chunk to timestamps and values */
+	void readChunk(final int chunk, final int count, final long[] timestamps, final double[] values) {
+		final int page = chunk / chunksPerPage;
+		final int offset = (chunk % chunksPerPage) * 2 * chunkPoints;
+		longPages[page].get(offset, timestamps, 0, count);
+		doublePages[page].get(offset + chunkPoints, values, 0, count);
+	}
+}
@@ -0,0 +1,108 @@
+package pbtest.utils;
+
+import java.util.Arrays;
+
+/**
+ * Map from byte strings to non negative ints, looked up straight from a range
+ * of a byte array so that finding a known key allocates nothing. Keys are
+ * copied into a single arena and the table uses open addressing with linear
+ * probing. Instances are not thread safe.
+ */
+public final class ByteDictionary {
+
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private byte[] arena = new byte[4096];
+	private int arenaSize;
+
+	/** per entry: start of the key in the arena, its length, hash and value */
+	private int[] offsets = new int[64];
+	private int[] lengths = new int[64];
+	private int[] hashes = new int[64];
+	private int[] values = new int[64];
+	private int size;
+
+	/** entry index + 1, 0 for an empty slot */
+	private int[] slots = new int[128];
+
+	/** @return value of the key buf[from, to), or -1 if it isn't there */
+	public int get(final byte[] buf, final int from, final int to) {
+		final int hash = Bytes.hash(buf, from, to);
+		final int mask = slots.length - 1;
+		for (int slot = hash & mask;; slot = (slot + 1) & mask) {
+			final int entry = slots[slot] - 1;
+			if (entry < 0) {
+				return -1;
+			}
+			if (hashes[entry] == hash && matches(entry, buf, from, to)) {
+				return values[entry];
+			}
+		}
+	}
+
+	/**
+	 * Maps the key buf[from, to) to value, replacing any previous value.
+	 * @param value must be non negative
+	 */
+	public void put(final byte[] buf, final int from, final int to, final int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("invalid value: " + value);
+		}
+		final int hash = Bytes.hash(buf, from, to);
+		final int mask = slots.length - 1;
+		int slot = hash & mask;
+		for (;; slot = (slot + 1) & mask) {
+			final int entry = slots[slot] - 1;
+			if (entry < 0) {
+				break;
+			}
+			if (hashes[entry] == hash && matches(entry, buf, from, to)) {
+				values[entry] = value;
+				return;
+			}
+		}
+
+		final int length = to - from;
+		if (arenaSize + length > arena.length) {
+			arena = Arrays.copyOf(arena, Math.max(arena.length * 2, arenaSize + length));
+		}
+		System.arraycopy(buf, from, arena, arenaSize, length);
+		if (size == offsets.length) {
+			offsets = Arrays.copyOf(offsets, size * 2);
+			lengths = Arrays.copyOf(lengths, size * 2);
+			hashes = Arrays.copyOf(hashes, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		offsets[size] = arenaSize;
+		lengths[size] = length;
+		hashes[size] = hash;
+		values[size] = value;
+		arenaSize += length;
+		slots[slot] = ++size;
+
+		if (size > slots.length * LOAD_FACTOR) {
+			rehash();
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private boolean matches(final int entry, final byte[] buf, final int from, final int to) {
+		final int offset = offsets[entry];
+		return lengths[entry] == to - from && Arrays.equals(arena, offset, offset + lengths[entry], buf, from, to);
+	}
+
+	private void rehash() {
+		slots = new int[slots.length * 2];
+		final int mask = slots.length - 1;
+		for (int entry = 0; entry < size; entry++) {
+			int slot = hashes[entry] & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = entry + 1;
+		}
+	}
+}
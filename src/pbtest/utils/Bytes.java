@@ -0,0 +1,58 @@
+package pbtest.utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Helpers over ranges of byte arrays that read 8 bytes at a time ("SIMD within
+ * a register"). None of them allocates.
+ */
+public final class Bytes {
+
+	private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+	private static final long ONES = 0x0101010101010101L;
+	private static final long HIGHS = 0x8080808080808080L;
+
+	private Bytes() {
+	}
+
+	/**
+	 * Finds the first occurrence of b in buf[from, to). Bytes equal to b are
+	 * found in 8 byte words: XORing the word with b repeated in every byte
+	 * turns them into zero bytes, and (x - 0x01..01) &amp; ~x &amp; 0x80..80
+	 * flags the lowest zero byte of x.
+	 * @return index of b, or -1 if it isn't in the range
+	 */
+	public static int indexOf(final byte[] buf, final int from, final int to, final byte b) {
+		final long pattern = (b & 0xFFL) * ONES;
+		int i = from;
+		for (; i + 8 <= to; i += 8) {
+			final long x = (long) LONGS.get(buf, i) ^ pattern;
+			final long found = (x - ONES) & ~x & HIGHS;
+			if (found != 0) {
+				return i + (Long.numberOfTrailingZeros(found) >>> 3);
+			}
+		}
+		for (; i < to; i++) {
+			if (buf[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/** @return hash of the bytes of buf[from, to) */
+	public static int hash(final byte[] buf, final int from, final int to) {
+		long h = to - from;
+		int i = from;
+		for (; i + 8 <= to; i += 8) {
+			h = (h ^ (long) LONGS.get(buf, i)) * 0x9E3779B97F4A7C15L;
+		}
+		for (; i < to; i++) {
+			h = (h ^ (buf[i] & 0xFF)) * 0x9E3779B97F4A7C15L;
+		}
+		return (int) (h ^ (h >>> 29) ^ (h >>> 43));
+	}
+}
@@ -0,0 +1,82 @@
+package pbtest.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import pbtest.DataPointProtos.Header;
+
+/**
+ * Two-way mapping between the strings stored in a file's {@code Header} and
+ * their ids, the ids being the position of the strings in the header. Both
+ * directions are O(1).
+ */
+public class Dictionary {
+
+	private final List<String> values = new ArrayList<>();
+	private final HashMap<String, Integer> ids = new HashMap<>();
+
+	/** @return a dictionary holding the values of the header */
+	public static Dictionary fromHeader(final Header header) {
+		final Dictionary dictionary = new Dictionary();
+		for (int i = 0; i < header.getValueCount(); i++) {
+			dictionary.add(header.getValue(i));
+		}
+		return dictionary;
+	}
+
+	/**
+	 * Adds a value to the dictionary, if not already there.
+	 * @return id of the value
+	 */
+	public int add(final String value) {
+		final Integer id = ids.get(value);
+		if (id != null) {
+			return id;
+		}
+		final int newId = values.size();
+		values.add(value);
+		ids.put(value, newId);
+		return newId;
+	}
+
+	/**
+	 * @return id of the value
+	 * @throws IllegalArgumentException if the value is not in the dictionary
+	 */
+	public int getId(final String value) {
+		final Integer id = ids.get(value);
+		if (id == null) {
+			throw new IllegalArgumentException("could not find value id for: " + value);
+		}
+		return id;
+	}
+
+	/** @return true if the value is in the dictionary */
+	public boolean contains(final String value) {
+		return ids.containsKey(value);
+	}
+
+	/** @return value with the given id */
+	public String getValue(final int id) {
+		return values.get(id);
+	}
+
+	public int size() {
+		return values.size();
+	}
+
+	public void clear() {
+		values.clear();
+		ids.clear();
+	}
+
+	/** @return the values, ordered by id */
+	public List<String> values() {
+		return values;
+	}
+
+	public Header toHeader() {
+		return Header.newBuilder().addAllValue(values).build();
+	}
+}
@@ -1,19 +1,18 @@
 package pbtest.utils;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 
+import pbtest.simd.Kernels;
+
 
 public class Utils {
 
 	/** Mask to verify a timestamp on 4 bytes in seconds */
 	public static final long SECOND_MASK = 0xFFFFFFFF00000000L;
 	
+	/** @see Kernels#mean(double[], int, int) */
 	public static double mean(double[] values) {
-		double sum = 0;
-		for (double value : values) {
-			sum += value;
-		}
-		
-		return sum / values.length;
+		return Kernels.get().mean(values, 0, values.length);
 	}
 
 	/**
@@ -100,6 +99,128 @@ public class Utils {
 		}
 	}
 
+	/**
+	 * Same as {@link #parseLong(CharSequence)} for the ASCII digits of
+	 * buf[from, to). Doesn't allocate unless the value is malformed.
+	 * @throws NumberFormatException if the value is malformed or overflows.
+	 */
+	public static long parseLong(final byte[] buf, final int from, final int to) {
+		final int n = to - from;
+		if (n <= 0) {
+			throw new NumberFormatException("Empty string");
+		}
+		byte c = buf[from];  // Current character.
+		int i = from + 1;  // index in `buf'.
+		if (c < '0' && (c == '+' || c == '-')) {  // Only 1 test in common case.
+			if (n == 1) {
+				throw new NumberFormatException("Just a sign, no value: " + ascii(buf, from, to));
+			} else if (n > 20) {  // "+9223372036854775807" or "-9223372036854775808"
+				throw new NumberFormatException("Value too long: " + ascii(buf, from, to));
+			}
+			c = buf[from + 1];
+			i = from + 2;  // Skip over the sign.
+		} else if (n > 19) {  // "9223372036854775807"
+			throw new NumberFormatException("Value too long: " + ascii(buf, from, to));
+		}
+		long v = 0;  // The result (negated to easily handle MIN_VALUE).
+		do {
+			if ('0' <= c && c <= '9') {
+				v -= c - '0';
+			} else {
+				throw new NumberFormatException("Invalid character '" + (char) c
+						+ "' in " + ascii(buf, from, to));
+			}
+			if (i == to) {
+				break;
+			}
+			v *= 10;
+			c = buf[i++];
+		} while (true);
+		if (v > 0) {
+			throw new NumberFormatException("Overflow in " + ascii(buf, from, to));
+		} else if (buf[from] == '-') {
+			return v;  // Value is already negative, return unchanged.
+		} else if (v == Long.MIN_VALUE) {
+			throw new NumberFormatException("Overflow in " + ascii(buf, from, to));
+		} else {
+			return -v;  // Positive value, need to fix the sign.
+		}
+	}
+
+	/** Powers of 10 that are exact as floats */
+	private static final float[] FLOAT_POWERS_OF_10 = {
+		1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+	};
+
+	/**
+	 * Parses a float from the ASCII characters of buf[from, to), with the
+	 * result of {@link Float#parseFloat(String)}.
+	 * <p>
+	 * Plain decimals with up to 7 significant digits and a small exponent,
+	 * such as "-489.862" or "1.5e3", are computed with a single float
+	 * multiplication or division of two exact floats, which is correctly
+	 * rounded, and don't allocate. Anything else goes through
+	 * {@link Float#parseFloat(String)}.
+	 * @throws NumberFormatException if the value is malformed.
+	 */
+	public static float parseFloat(final byte[] buf, final int from, final int to) {
+		int i = from;
+		boolean negative = false;
+		if (i < to && (buf[i] == '-' || buf[i] == '+')) {
+			negative = buf[i] == '-';
+			i++;
+		}
+		long mantissa = 0;
+		int exponent = 0;
+		boolean digits = false;
+		for (; i < to && buf[i] >= '0' && buf[i] <= '9'; i++) {
+			if (mantissa < (1L << 40)) {
+				mantissa = mantissa * 10 + (buf[i] - '0');
+			} else {
+				exponent++;
+			}
+			digits = true;
+		}
+		if (i < to && buf[i] == '.') {
+			for (i++; i < to && buf[i] >= '0' && buf[i] <= '9'; i++) {
+				if (mantissa < (1L << 40)) {
+					mantissa = mantissa * 10 + (buf[i] - '0');
+					exponent--;
+				}
+				digits = true;
+			}
+		}
+		if (digits && i < to && (buf[i] == 'e' || buf[i] == 'E')) {
+			i++;
+			boolean negativeExponent = false;
+			if (i < to && (buf[i] == '-' || buf[i] == '+')) {
+				negativeExponent = buf[i] == '-';
+				i++;
+			}
+			int e = 0;
+			final int start = i;
+			for (; i < to && buf[i] >= '0' && buf[i] <= '9'; i++) {
+				e = Math.min(e * 10 + (buf[i] - '0'), 1000);
+			}
+			if (i == start) {
+				digits = false;
+			}
+			exponent += negativeExponent ? -e : e;
+		}
+
+		if (digits && i == to && mantissa <= (1 << 24)
+				&& exponent >= -10 && exponent <= 10) {
+			float f = mantissa;
+			f = exponent < 0 ? f / FLOAT_POWERS_OF_10[-exponent] : f * FLOAT_POWERS_OF_10[exponent];
+			return negative ? -f : f;
+		}
+		return Float.parseFloat(ascii(buf, from, to));
+	}
+
+	private static String ascii(final byte[] buf, final int from, final int to) {
+		return new String(buf, from, to - from, StandardCharsets.ISO_8859_1);
+	}
+
 	/**
 	 * Parses a tag into a HashMap.
 	 * @param tags The HashMap into which to store the tag.
@@ -142,4 +263,15 @@ public class Utils {
 		}
 		return true;
 	}
+
+	/** Same as {@link #looksLikeInteger(String)} for buf[from, to) */
+	public static boolean looksLikeInteger(final byte[] buf, final int from, final int to) {
+		for (int i = from; i < to; i++) {
+			final byte c = buf[i];
+			if (c == '.' || c == 'e' || c == 'E') {
+				return false;
+			}
+		}
+		return true;
+	}
 }